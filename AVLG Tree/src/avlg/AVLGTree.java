@@ -4,6 +4,26 @@ import avlg.exceptions.UnimplementedMethodException;
 import avlg.exceptions.EmptyTreeException;
 import avlg.exceptions.InvalidBalanceException;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /** <p>{@link AVLGTree}  is a class representing an <a href="https://en.wikipedia.org/wiki/AVL_tree">AVL Tree</a> with
  * a relaxed balance condition. Its constructor receives a strictly  positive parameter which controls the <b>maximum</b>
  * imbalance allowed on any subtree of the tree which it creates. So, for example:</p>
@@ -26,7 +46,7 @@ import avlg.exceptions.InvalidBalanceException;
  * @see InvalidBalanceException
  * @see StudentTests
  */
-public class AVLGTree<T extends Comparable<T>> {
+public class AVLGTree<T extends Comparable<T>> implements Iterable<T> {
 
     /* ********************************************************* *
      * Write any private data elements or private methods here...*
@@ -36,11 +56,232 @@ public class AVLGTree<T extends Comparable<T>> {
 		private T data;
 		private Node<T> left;
 		private Node<T> right;
+		private int height; /* cached: a stub has a height of 0, maintained by update() */
+		private int count = 1; /* occurrences of data; only ever more than 1 in a multiset */
+		private int size = 1; /* cached: number of keys in the subtree rooted here, with repeats, maintained by update() */
+		private int epoch; /* the epoch of the tree that created it; nodes of any other epoch are shared, read-only */
 	}
 
+	/*the result of splitting a subtree around a key: the keys below it, the detached node holding it (if any), the keys above it*/
+	private static class Split<T>{
+		private Node<T> left;
+		private Node<T> match;
+		private Node<T> right;
+
+		private Split(Node<T> left, Node<T> match, Node<T> right) {
+			this.left = left;
+			this.match = match;
+			this.right = right;
+		}
+	}
+
+	private enum SetOperation { UNION, INTERSECTION, DIFFERENCE }
+
+	/*
+	 * Checks the subtree of node bottom-up in one pass, and returns its height, or INVALID if anything is wrong: a key
+	 * outside [lo, hi], where null is unbounded (the bounds are inclusive, since insert() lets a set take a key twice,
+	 * and rotations may then leave equal keys on either side of each other), or, unless bound is negative, an imbalance larger than bound or a
+	 * cached height, size or count which does not match the tree. Large subtrees check their two children in parallel.
+	 */
+	private static class Verifier<T extends Comparable<T>> extends RecursiveTask<Integer> {
+		private static final int INVALID = Integer.MIN_VALUE;
+		private final Node<T> node;
+		private final T lo, hi;
+		private final int bound;
+		private final boolean multiset;
+
+		private Verifier(Node<T> node, T lo, T hi, int bound, boolean multiset) {
+			this.node = node;
+			this.lo = lo;
+			this.hi = hi;
+			this.bound = bound;
+			this.multiset = multiset;
+		}
+
+		@Override
+		protected Integer compute() {
+			if(!splits(node))
+				return verify(node, lo, hi);
+			if(!inRange(node, lo, hi))
+				return INVALID;
+			Verifier<T> left = new Verifier<>(node.left, lo, node.data, bound, multiset);
+			Verifier<T> right = new Verifier<>(node.right, node.data, hi, bound, multiset);
+			left.fork();
+			int rightHeight = right.compute();
+			return check(node, left.join(), rightHeight);
+		}
+
+		/*whether both subtrees of node are large enough to be checked in parallel*/
+		private static boolean splits(Node<?> node) {
+			return node != null && node.left != null && node.right != null
+					&& node.left.size >= PARALLEL_THRESHOLD && node.right.size >= PARALLEL_THRESHOLD;
+		}
+
+		/*
+		 * Checks the subtree of node in post-order. The nodes whose subtrees are still being checked wait on an explicit
+		 * stack, along with the bounds of their keys, so that even a legitimately very deep tree cannot overflow the call
+		 * stack; the heights of the completed subtrees wait on a second one. A subtree which splits is handed to a
+		 * Verifier of its own, which forks. Every fork takes PARALLEL_THRESHOLD keys off its sibling, so those calls
+		 * nest at most n / PARALLEL_THRESHOLD deep.
+		 */
+		private int verify(Node<T> node, T lo, T hi) {
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			Node<T>[] stack = (Node<T>[]) new Node[INITIAL_PATH_CAPACITY];
+			Object[] lows = new Object[INITIAL_PATH_CAPACITY], highs = new Object[INITIAL_PATH_CAPACITY]; /*bounds of stack[i], null if unbounded*/
+			boolean[] expanded = new boolean[INITIAL_PATH_CAPACITY]; /*whether the subtrees of stack[i] have been pushed*/
+			int[] heights = new int[INITIAL_PATH_CAPACITY];
+			int top = 0, done = 0;
+			stack[top] = node;
+			lows[top] = lo;
+			highs[top++] = hi;
+			while(top > 0) {
+				Node<T> curr = stack[top-1];
+				@SuppressWarnings("unchecked")
+				T low = (T)lows[top-1], high = (T)highs[top-1];
+				int height;
+				if(expanded[top-1]) {
+					done -= 2; // Both of its subtrees are complete, the left one first.
+					height = check(curr, heights[done], heights[done+1]);
+				}else if(curr == null) {
+					height = -1;
+				}else if(splits(curr)) {
+					height = new Verifier<>(curr, low, high, bound, multiset).compute();
+				}else if(!inRange(curr, low, high)) {
+					return INVALID;
+				}else {
+					if(top + 2 > stack.length) {
+						int length = 2 * stack.length;
+						stack = Arrays.copyOf(stack, length);
+						lows = Arrays.copyOf(lows, length);
+						highs = Arrays.copyOf(highs, length);
+						expanded = Arrays.copyOf(expanded, length);
+					}
+					expanded[top-1] = true;
+					stack[top] = curr.right;
+					lows[top] = curr.data;
+					highs[top++] = high;
+					stack[top] = curr.left;
+					lows[top] = low;
+					highs[top++] = curr.data;
+					continue;
+				}
+				if(height == INVALID)
+					return INVALID;
+				stack[--top] = null;
+				lows[top] = highs[top] = null;
+				expanded[top] = false;
+				if(done == heights.length)
+					heights = Arrays.copyOf(heights, 2 * done);
+				heights[done++] = height;
+			}
+			return heights[0];
+		}
+
+		private boolean inRange(Node<T> node, T lo, T hi) {
+			return (lo == null || node.data.compareTo(lo) >= 0) && (hi == null || node.data.compareTo(hi) <= 0);
+		}
+
+		private int check(Node<T> node, int leftHeight, int rightHeight) {
+			if(leftHeight == INVALID || rightHeight == INVALID)
+				return INVALID;
+			int height = 1 + Math.max(leftHeight, rightHeight);
+			if(bound >= 0) {
+				int size = node.count + (node.left == null ? 0 : node.left.size) + (node.right == null ? 0 : node.right.size);
+				if(Math.abs(leftHeight - rightHeight) > bound || node.height != height || node.size != size
+						|| node.count < 1 || (node.count > 1 && !multiset))
+					return INVALID;
+			}
+			return height;
+		}
+	}
+
+	/*hands out the keys of a bulk load one by one, making sure that they are strictly increasing*/
+	private static class SortedSource<T extends Comparable<T>>{
+		private Iterator<T> keys;
+		private T last;
+		private AVLGTreeFilter filter;
+
+		private SortedSource(Iterator<T> keys, T last, AVLGTreeFilter filter) {
+			this.keys = keys;
+			this.last = last;
+			this.filter = filter;
+		}
+
+		private T next() {
+			if(!keys.hasNext())
+				throw new IllegalArgumentException("Bulk load: the source ran out of keys before the promised count was reached.");
+			T key = keys.next();
+			if(last != null && last.compareTo(key) >= 0)
+				throw new IllegalArgumentException("Bulk load: key " + key + " does not come strictly after " + last + ".");
+			last = key;
+			if(filter != null)
+				filter.add(key);
+			return key;
+		}
+	}
+
+	/*reads the records of a snapshot file through a sliding memory-mapped window, since a single mapping cannot exceed 2GB*/
+	private static class MappedReader {
+		private static final long WINDOW = 1L << 30;
+		private final FileChannel channel;
+		private final long length;
+		private long base; /*file offset of the window's first byte*/
+		private MappedByteBuffer window;
+
+		private MappedReader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			length = channel.size();
+			map(0);
+		}
+
+		private void map(long offset) throws IOException {
+			base = offset;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, length - offset));
+		}
+
+		private long position() {
+			return base + window.position();
+		}
+
+		/*the window ends before the record which starts at start: slide it so that it starts there instead*/
+		private void slide(int start) throws IOException {
+			if(start == 0 || base + window.limit() == length)
+				throw new IOException("Snapshot: the file is truncated or corrupt at offset " + (base + start) + ".");
+			map(base + start);
+		}
+	}
+
+	private static final int SNAPSHOT_MAGIC = 0x41564C47; /*"AVLG"*/
+	private static final byte SNAPSHOT_VERSION = 1;
+	private static final int HAS_LEFT = 1, HAS_RIGHT = 2, REPEATED = 4; /*flags of a node record*/
+	private static final int INITIAL_PATH_CAPACITY = 64;
+	private static final int SWEEP_BUDGET = 8; /*sweep steps piggybacked on every operation of an adaptive tree*/
+	private static final int PARALLEL_THRESHOLD = 1 << 13; /*set operations on fewer keys than this are not worth forking*/
+	private static final AtomicInteger EPOCHS = new AtomicInteger(); /*epochs are unique across all trees*/
+	static final Object RETRY = new Object(); /*returned by probe() when a racing writer got in the way*/
+
 	private Node<T> root;
 	private int maxImbalance;
 
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Node<T>[] path = (Node<T>[]) new Node[INITIAL_PATH_CAPACITY]; /*reusable root-to-leaf path of the current update*/
+	private int modCount; /*bumped by every structural change, so that cursors can fail fast*/
+	private int epoch; /*only nodes of this epoch may be changed in place; the others are shared and must be copied first*/
+	private boolean frozen; /*true for the read-only trees handed out by snapshot()*/
+	private boolean multiset; /*true if repeated keys are counted in place*/
+	private AVLGTreeStats stats; /*null unless enableStats() was called, so that disabled statistics cost one null check*/
+	private AVLGTreeFilter filter; /*null unless enableFilter() was called; holds a superset of the keys of the tree*/
+	private ImbalanceTuner tuner; /*null unless the tree is adaptive*/
+	private int pendingImbalance; /*non-zero while an incremental sweep is lowering maxImbalance to this value*/
+	private int sweepImbalance; /*the largest value of pendingImbalance since the current sweep started*/
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Node<T>[] sweepStack = (Node<T>[]) new Node[INITIAL_PATH_CAPACITY]; /*post-order position of the sweep*/
+	private byte[] sweepState = new byte[INITIAL_PATH_CAPACITY]; /*0: go left next, 1: go right next, 2: repair node next*/
+	private int sweepTop;
+	private long rotations;
+	private int lastPathLength;
+	private int lastRetraceLength;
+
     /* ******************************************************** *
      * ************************ PUBLIC METHODS **************** *
      * ******************************************************** */
@@ -55,6 +296,92 @@ public class AVLGTree<T extends Comparable<T>> {
         	throw new InvalidBalanceException(null);
     	this.maxImbalance = maxImbalance;
         root = null;
+        epoch = EPOCHS.incrementAndGet();
+    }
+
+    /**
+     * <p>Creates a tree which is either a set, like the one built by {@link #AVLGTree(int)}, or a <b>multiset</b>.
+     * A multiset keeps a single node per distinct key, along with the number of times that it was inserted:
+     * inserting a key which is already there only increments its count, without any structural change, and
+     * {@link #delete(Comparable) deleting} it decrements its count, removing its node only when the count drops to
+     * zero. The memory and the height of a multiset thus grow with the number of <em>distinct</em> keys, however
+     * often they repeat.</p>
+     *
+     * <p>Every repeat counts as a key of its own: {@link #getCount()}, {@link #rank(Comparable)},
+     * {@link #select(int)} and {@link #countInRange(Comparable, Comparable)} take repeats into account, iterators
+     * return a key as many times as it occurs, and {@link #count(Comparable)} tells how many times that is.</p>
+     * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+     * @param multiset {@code true} for a multiset, {@code false} for a set.
+     * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+     */
+    public AVLGTree(int maxImbalance, boolean multiset) throws InvalidBalanceException {
+    	this(maxImbalance);
+    	this.multiset = multiset;
+    }
+
+    /*a writable tree made out of nodes which it did not create, and therefore copies before changing them*/
+    private AVLGTree(int maxImbalance, boolean multiset, Node<T> root) {
+    	this.maxImbalance = maxImbalance;
+    	this.multiset = multiset;
+    	this.root = root;
+    	epoch = EPOCHS.incrementAndGet();
+    }
+
+    /*the read-only copy of source which is handed out by snapshot()*/
+    private AVLGTree(AVLGTree<T> source) {
+    	maxImbalance = source.maxImbalance;
+    	multiset = source.multiset;
+    	root = source.root;
+    	epoch = source.epoch;
+    	frozen = true;
+    }
+
+    /**
+     * <p>Bulk-loads a new tree out of n keys given in <b>strictly increasing</b> order. Instead of n insertions, which
+     * would cost O(n log n) comparisons and lots of rotations, the keys are placed directly into a perfectly balanced
+     * tree in O(n) time, with no rotations at all. Larger sources can then be loaded one chunk at a time through
+     * {@link #appendSorted(Iterator, int)}.</p>
+     * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+     * @param sorted An {@link Iterator} over at least n keys, in strictly increasing order.
+     * @param n The number of keys to consume from sorted.
+     * @param <T> The type of the keys.
+     * @return A new tree holding the first n keys of sorted.
+     * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+     * @throws IllegalArgumentException if n is negative, if sorted has fewer than n keys, or if the keys
+     * are not in strictly increasing order.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> fromSorted(int maxImbalance, Iterator<T> sorted, int n)
+    		throws InvalidBalanceException {
+    	AVLGTree<T> tree = new AVLGTree<>(maxImbalance);
+    	tree.appendSorted(sorted, n);
+    	return tree;
+    }
+
+    /**
+     * <p>Bulk-loads the next chunk of a sorted source into the tree. The n keys must be in <b>strictly increasing</b>
+     * order, and all of them must be larger than every key already in the tree. The chunk is built into a perfectly
+     * balanced subtree in O(n) time, which is then joined with the existing tree along its right spine in
+     * O(log N) time, so that loading a very large source chunk by chunk costs linear time overall.</p>
+     * @param sorted An {@link Iterator} over at least n keys, in strictly increasing order.
+     * @param n The number of keys to consume from sorted.
+     * @throws IllegalArgumentException if n is negative, if sorted has fewer than n keys, if the keys are not in
+     * strictly increasing order or if the first of them is not larger than every key in the tree.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
+     */
+    public void appendSorted(Iterator<T> sorted, int n) {
+    	checkWritable("appendSorted");
+    	if(n < 0)
+    		throw new IllegalArgumentException("Bulk load: cannot load a negative number (" + n + ") of keys.");
+    	if(n == 0)
+    		return;
+    	if(isEmpty()) {
+    		root = build(new SortedSource<>(sorted, null, filter), n);
+    	}else {
+    		SortedSource<T> source = new SortedSource<>(sorted, max(root).data, filter);
+    		Node<T> middle = newNode(source.next());
+    		root = join(root, middle, build(source, n-1));
+    	}
+    	modCount++;
     }
 
     /**
@@ -62,26 +389,58 @@ public class AVLGTree<T extends Comparable<T>> {
      * duplicates! This means that in a deletion test, any key that has been
      * inserted and subsequently deleted should <b>not</b> be found in the tree!
      * s
+     * <p>In a {@link #AVLGTree(int, boolean) multiset}, inserting a key which is already in the tree increments
+     * its count instead.</p>
      * @param key The key to insert in the tree.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
      */
    
     public void insert(T key) {
+    	checkWritable("insert");
+    	modCount++;
     	if(isEmpty()) {
-    		this.root = new Node<T>();
-    		this.root.data = key;
-    		this.root.left = null;
-    		this.root.right = null;
+    		this.root = newNode(key);
+    		lastPathLength = 0;
+    		lastRetraceLength = 0;
     	}else{
-    		this.root = insertHelper(this.root, key);
+    		/*descend once, remembering the path, and hang the new leaf under its last node*/
+    		int depth = 0;
+    		Node<T> curr = root;
+    		int cmp = 0;
+    		while(curr != null) {
+    			push(depth++, curr);
+    			cmp = curr.data.compareTo(key);
+    			if(cmp == 0 && multiset)
+    				break;
+    			if(cmp > 0) {
+    				curr = curr.left;
+    			}else {
+    				curr = curr.right;
+    			}
+    		}
+    		ownPath(depth);
+    		if(curr != null) {
+    			/*a repeat: the path gets one more key, but no new node, so retracing stops right away*/
+    			path[depth-1].count++;
+    		}else if(cmp > 0) {
+    			path[depth-1].left = newNode(key);
+    		}else {
+    			path[depth-1].right = newNode(key);
+    		}
+    		lastPathLength = depth;
+    		root = retrace(depth, 1);
     	}
+    	if(stats != null)
+    		stats.insertion(lastPathLength, lastRetraceLength);
+    	if(filter != null) {
+    		filter.add(key);
+    		if(filter.isOverloaded())
+    			rebuildFilter();
+    	}
+    	if(tuner != null)
+    		adapt(true);
     }
 
-    /**
-     * Delete the key from the data structure and return it to the caller.
-     * @param key The key to delete from the structure.
-     * @return The key that was removed, or {@code null} if the key was not found.
-     * @throws EmptyTreeException if the tree is empty.
-     */
     private Node<T> min(Node<T> node) {
     	Node<T> curr = node;
     	while(curr.left != null)
@@ -96,72 +455,610 @@ public class AVLGTree<T extends Comparable<T>> {
     	return curr;
     }
     
+    /**
+     * Delete the key from the data structure and return it to the caller. In a
+     * {@link #AVLGTree(int, boolean) multiset}, only one occurrence of the key is deleted.
+     * @param key The key to delete from the structure.
+     * @return The key that was removed, or {@code null} if the key was not found.
+     * @throws EmptyTreeException if the tree is empty.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
+     */
     public T delete(T key) throws EmptyTreeException {
+       	checkWritable("delete");
        	if(root == null)
        		throw new EmptyTreeException(null);
-       	else {
-       		if(search(key) == null) {
-       			return null;
+       	/*descend once, remembering the path to the node that holds key*/
+       	int depth = 0;
+       	Node<T> curr = root;
+       	while(curr != null) {
+       		int cmp = curr.data.compareTo(key);
+       		if(cmp == 0)
+       			break;
+       		push(depth++, curr);
+       		if(cmp > 0) {
+       			curr = curr.left;
+       		}else {
+       			curr = curr.right;
        		}
-       		this.root = balance(delete(root, key));
-       		return key;
        	}
+       	if(curr == null) {
+       		Arrays.fill(path, 0, depth, null);
+       		lastPathLength = depth;
+       		lastRetraceLength = 0;
+       		if(stats != null)
+       			stats.deletion(lastPathLength, 0);
+       		if(tuner != null)
+       			adapt(true);
+       		return null;
+       	}
+       	return unlink(depth, curr);
+    }
+
+    /**
+     * <p>Removes and returns the smallest key of the tree, so that the tree can serve as a priority queue. Only the
+     * left spine is walked, and the AVL-G bound is restored on the way back up, in O(log n) time overall. In a
+     * {@link #AVLGTree(int, boolean) multiset}, only one occurrence of the key is removed.</p>
+     * @return The smallest key of the tree.
+     * @throws EmptyTreeException if the tree is empty.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
+     */
+    public T pollFirst() throws EmptyTreeException {
+    	return poll("pollFirst", true);
+    }
+
+    /**
+     * <p>Removes and returns the largest key of the tree. Together with {@link #pollFirst()}, this makes the tree a
+     * double-ended priority queue. Runs in O(log n) time, along the right spine.</p>
+     * @return The largest key of the tree.
+     * @throws EmptyTreeException if the tree is empty.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
+     */
+    public T pollLast() throws EmptyTreeException {
+    	return poll("pollLast", false);
+    }
+
+    private T poll(String operation, boolean first) throws EmptyTreeException {
+    	checkWritable(operation);
+    	if(root == null)
+    		throw new EmptyTreeException(operation);
+    	/*no comparisons needed: the extreme key is at the end of its spine*/
+    	int depth = 0;
+    	Node<T> curr = root;
+    	for(Node<T> next = first ? curr.left : curr.right; next != null; next = first ? curr.left : curr.right) {
+    		push(depth++, curr);
+    		curr = next;
+    	}
+    	return unlink(depth, curr);
+    }
+
+    /*removes one occurrence of curr's key, given path[0, depth) down to curr, and rebalances on the way back up*/
+    private T unlink(int depth, Node<T> curr) {
+       	modCount++;
+       	T removed = curr.data;
+       	if(filter != null)
+       		filter.remove(removed);
+       	if(curr.count > 1) {
+       		/*one occurrence less, but the node stays*/
+       		push(depth++, curr);
+       		ownPath(depth);
+       		path[depth-1].count--;
+       		lastPathLength = depth;
+       		root = retrace(depth, -1);
+       		if(stats != null)
+       			stats.deletion(lastPathLength, lastRetraceLength);
+       		if(tuner != null)
+       			adapt(true);
+       		return removed;
+       	}
+       	Node<T> target = curr;
+       	int currDepth = -1;
+       	if(curr.left != null && curr.right != null) {
+       		/*two children: the in-order successor's key moves up, and the successor node is unlinked instead*/
+       		currDepth = depth;
+       		push(depth++, curr);
+       		target = curr.right;
+       		while(target.left != null) {
+       			push(depth++, target);
+       			target = target.left;
+       		}
+       	}
+       	ownPath(depth);
+       	if(currDepth >= 0) {
+       		path[currDepth].data = target.data;
+       		path[currDepth].count = target.count;
+       		/*the subtrees between curr and the successor lose all of the successor's occurrences, not just one*/
+       		for(int i = currDepth + 1; i < depth; i++)
+       			path[i].size -= target.count - 1;
+       	}
+       	Node<T> child = (target.left != null) ? target.left : target.right;
+       	lastPathLength = depth + 1;
+       	if(depth == 0) {
+       		root = child;
+       		lastRetraceLength = 0;
+       	}else {
+       		relink(path[depth-1], target, child);
+       		root = retrace(depth, -1);
+       	}
+       	if(stats != null)
+       		stats.deletion(lastPathLength, lastRetraceLength);
+       	if(tuner != null)
+       		adapt(true);
+       	return removed;
+    }
+
+    /**
+     * <p>Takes a point-in-time, <b>read-only</b> snapshot of the tree in O(1) time, without copying anything. The
+     * snapshot and the tree share all of their nodes. From then on, the tree no longer changes shared nodes in place:
+     * its insertions and deletions copy the O(log n) nodes they touch (path copying) and leave the snapshot's
+     * version intact. A snapshot may therefore be read by other threads, without any locking, while the tree keeps
+     * being updated. Nodes which end up used by neither the tree nor any live snapshot are reclaimed by the garbage
+     * collector as usual.</p>
+     * @return A read-only tree holding exactly the keys which are currently in this. Calling
+     * {@link #insert(Comparable)}, {@link #delete(Comparable)}, {@link #clear()} or
+     * {@link #appendSorted(Iterator, int)} on it throws an {@link UnsupportedOperationException}.
+     */
+    public AVLGTree<T> snapshot() {
+    	if(frozen)
+    		return this; // Already immutable.
+    	AVLGTree<T> snapshot = new AVLGTree<>(this);
+    	share(); // Every node that exists right now is now shared with the snapshot.
+    	return snapshot;
+    }
+
+    /**
+     * Query the tree for being a read-only {@link #snapshot() snapshot}.
+     * @return {@code true} if this is a snapshot and cannot be modified, {@code false} otherwise.
+     */
+    public boolean isSnapshot() {
+    	return frozen;
+    }
+
+    /**
+     * <p>Writes the tree to the file at path, which is created or overwritten, so that {@link #readFrom(Path, KeyCodec)}
+     * can restore it much faster than n insertions would. The nodes are written in pre-order, each as a flag byte
+     * telling which children it has, its count if it is a repeated key of a {@link #AVLGTree(int, boolean) multiset},
+     * and its key as encoded by codec. Heights and subtree sizes are implied by the shape, and are not written. For
+     * integer keys, that is 5 bytes per key.</p>
+     *
+     * <p>The tree must not change while it is being written. To save a tree which other threads keep updating, write a
+     * {@link #snapshot()} of it instead.</p>
+     * @param path The file to write to.
+     * @param codec How to write the keys.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeTo(Path path, KeyCodec<T> codec) throws IOException {
+    	try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+    		out.writeInt(SNAPSHOT_MAGIC);
+    		out.writeByte(SNAPSHOT_VERSION);
+    		out.writeInt(maxImbalance);
+    		out.writeBoolean(multiset);
+    		out.writeInt(getCount());
+    		if(root == null)
+    			return;
+    		@SuppressWarnings({"unchecked", "rawtypes"})
+    		Node<T>[] stack = (Node<T>[]) new Node[height(root) + 2];
+    		int top = 0;
+    		stack[top++] = root;
+    		while(top > 0) {
+    			Node<T> node = stack[--top];
+    			int flags = (node.left != null ? HAS_LEFT : 0) | (node.right != null ? HAS_RIGHT : 0) | (node.count > 1 ? REPEATED : 0);
+    			out.writeByte(flags);
+    			if(node.count > 1)
+    				out.writeInt(node.count);
+    			codec.encode(node.data, out);
+    			if(node.right != null)
+    				stack[top++] = node.right;
+    			if(node.left != null)
+    				stack[top++] = node.left;
+    		}
+    	}
+    }
+
+    /**
+     * <p>Restores a tree written by {@link #writeTo(Path, KeyCodec)}. The file is memory-mapped and its nodes are linked
+     * back together in the very shape they had, in O(n) time and without a single rotation, so that restoring a large
+     * tree costs little more than reading its file. The nodes are checked as they are read, like
+     * {@link #isAVLGBalanced()} would check them, so that a corrupt file cannot load as a broken tree.</p>
+     * @param path The file to read from.
+     * @param codec How to read the keys. It must match the codec which wrote them.
+     * @param <T> The type of the keys.
+     * @return A new, writable tree with the keys, the imbalance parameter and the multiset mode of the tree that was
+     * written.
+     * @throws IOException if the file cannot be read, or if it is not a complete tree snapshot: if it is truncated, if
+     * codec rejects a key, or if the keys are out of order or out of balance.
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> readFrom(Path path, KeyCodec<T> codec) throws IOException {
+    	try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+    		MappedReader in = new MappedReader(channel);
+    		AVLGTree<T> tree;
+    		int count;
+    		try {
+    			if(in.window.getInt() != SNAPSHOT_MAGIC || in.window.get() != SNAPSHOT_VERSION)
+    				throw new IOException("Snapshot: " + path + " is not an AVL-G tree snapshot.");
+    			int maxImbalance = in.window.getInt();
+    			if(maxImbalance < 1)
+    				throw new IOException("Snapshot: invalid imbalance parameter " + maxImbalance + ".");
+    			tree = new AVLGTree<>(maxImbalance, in.window.get() != 0, null);
+    			count = in.window.getInt();
+    		}catch(BufferUnderflowException e) {
+    			throw new IOException("Snapshot: " + path + " is not an AVL-G tree snapshot.");
+    		}
+    		if(count > 0)
+    			tree.root = tree.read(in, codec);
+    		if(tree.getCount() != count || in.position() != in.length)
+    			throw new IOException("Snapshot: " + path + " is corrupt: it holds " + tree.getCount() + " keys instead of " + count + ".");
+    		return tree;
+    	}
+    }
+
+    /*
+     * Reads the subtree whose pre-order records start at the current position of in, and checks it as it goes, like
+     * verify(true) would: every key has to lie between the keys of its ancestors, and every node has to be
+     * within the bound once both of its subtrees are complete. The nodes whose children are still to be read wait on
+     * an explicit stack, along with the bounds of their keys, so that even a legitimately very deep tree cannot
+     * overflow the call stack.
+     */
+    private Node<T> read(MappedReader in, KeyCodec<T> codec) throws IOException {
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	Node<T>[] stack = (Node<T>[]) new Node[INITIAL_PATH_CAPACITY];
+    	int[] pending = new int[INITIAL_PATH_CAPACITY]; /*the flags of the children of stack[i] which are still to be read*/
+    	Object[] lows = new Object[INITIAL_PATH_CAPACITY], highs = new Object[INITIAL_PATH_CAPACITY]; /*bounds of stack[i], null if unbounded*/
+    	Node<T> root = record(in, codec, pending, 0);
+    	stack[0] = root;
+    	int top = 1;
+    	while(top > 0) {
+    		Node<T> node = stack[top-1];
+    		int flags = pending[top-1];
+    		if(flags == 0) {
+    			update(node); // Both of its subtrees are complete.
+    			if(Math.abs(height(node.left) - height(node.right)) > maxImbalance)
+    				throw new IOException("Snapshot: the subtree of key " + node.data + " is out of AVL-" + maxImbalance + " balance.");
+    			stack[--top] = null;
+    			lows[top] = highs[top] = null;
+    			continue;
+    		}
+    		if(top == stack.length) {
+    			stack = Arrays.copyOf(stack, 2 * top);
+    			pending = Arrays.copyOf(pending, 2 * top);
+    			lows = Arrays.copyOf(lows, 2 * top);
+    			highs = Arrays.copyOf(highs, 2 * top);
+    		}
+    		Node<T> child = record(in, codec, pending, top);
+    		boolean left = (flags & HAS_LEFT) != 0;
+    		lows[top] = left ? lows[top-1] : node.data;
+    		highs[top] = left ? node.data : highs[top-1];
+    		@SuppressWarnings("unchecked")
+    		T lo = (T)lows[top], hi = (T)highs[top];
+    		if((lo != null && child.data.compareTo(lo) < 0) || (hi != null && child.data.compareTo(hi) > 0))
+    			throw new IOException("Snapshot: key " + child.data + " is out of order at offset " + in.position() + ".");
+    		if(left) {
+    			node.left = child;
+    			pending[top-1] = flags & ~HAS_LEFT;
+    		}else {
+    			node.right = child;
+    			pending[top-1] = 0;
+    		}
+    		stack[top++] = child;
+    	}
+    	return root;
+    }
+
+    /*reads the record of a single node, and stores the flags of its children in pending[at]*/
+    private Node<T> record(MappedReader in, KeyCodec<T> codec, int[] pending, int at) throws IOException {
+    	int flags, count;
+    	T key;
+    	while(true) {
+    		int start = in.window.position();
+    		try {
+    			flags = in.window.get();
+    			count = (flags & REPEATED) != 0 ? in.window.getInt() : 1;
+    			key = codec.decode(in.window);
+    			break;
+    		}catch(BufferUnderflowException e) {
+    			in.slide(start); // The record straddles the end of the window.
+    		}catch(RuntimeException e) {
+    			throw new IOException("Snapshot: invalid key at offset " + (in.base + start) + ".", e);
+    		}
+    	}
+    	if(key == null || (flags & ~(HAS_LEFT | HAS_RIGHT | REPEATED)) != 0)
+    		throw new IOException("Snapshot: invalid record at offset " + in.position() + ".");
+    	if(count < 1 || (count > 1 && !multiset))
+    		throw new IOException("Snapshot: invalid count " + count + " at offset " + in.position() + ".");
+    	Node<T> node = newNode(key);
+    	node.count = count;
+    	pending[at] = flags & (HAS_LEFT | HAS_RIGHT);
+    	return node;
+    }
+
+    /**
+     * <p>Splits the tree around key: the keys smaller than key stay in this tree, while the keys larger than or equal
+     * to key move to a new tree with the same imbalance parameter, which is returned. Runs in O(log n) time, since
+     * the tree is cut along a single root-to-leaf path, and the pieces hanging off that path are joined back
+     * together without ever looking inside them.</p>
+     *
+     * <p>The two trees come out of the same nodes, so from then on, like a tree and its {@link #snapshot()}, each of
+     * them copies a node the first time that it changes it, and the two remain independent.</p>
+     * @param key The key to split around. It does not need to be in the tree.
+     * @return A new tree holding the keys of this tree which are larger than or equal to key.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
+     * @see #join(AVLGTree, Comparable, AVLGTree)
+     */
+    public AVLGTree<T> split(T key) {
+    	checkWritable("split");
+    	if(pendingImbalance > 0)
+    		disableSweep(); // The pieces must satisfy the bound that joins enforce.
+    	Split<T> split = split(root, key);
+    	Node<T> right = split.right;
+    	if(split.match != null)
+    		right = join(null, own(split.match), right);
+    	root = split.left;
+    	modCount++;
+    	/*the nodes of both halves bear this tree's epoch: neither half may own it any longer, or it could change
+    	 * nodes of the other one in place, so both copy them before changing them, as after a snapshot*/
+    	share();
+    	return new AVLGTree<>(maxImbalance, multiset, right);
+    }
+
+    /**
+     * <p>Joins two trees with the same imbalance parameter, and a key in between, into a new tree. Every key of left
+     * must be smaller than key, and every key of right larger. Runs in O(|height(left) - height(right)| + 1) time:
+     * the shorter tree is hung, along with key, at the right depth of the taller tree's inner spine, and the spine is
+     * rebalanced.</p>
+     *
+     * <p>The keys are <b>moved</b>, not copied: left and right are empty afterwards.</p>
+     * @param left The tree holding the smaller keys.
+     * @param key The key in between.
+     * @param right The tree holding the larger keys.
+     * @param <T> The type of the keys.
+     * @return A new tree holding the keys of left, key and the keys of right.
+     * @throws IllegalArgumentException if left and right are the same tree, if their imbalance parameters differ,
+     * if only one of them is a multiset, or if the keys are not in order.
+     * @throws UnsupportedOperationException if left or right is a read-only {@link #snapshot() snapshot}.
+     * @see #split(Comparable)
+     */
+    public static <T extends Comparable<T>> AVLGTree<T> join(AVLGTree<T> left, T key, AVLGTree<T> right) {
+    	left.checkWritable("join");
+    	right.checkWritable("join");
+    	if(left == right)
+    		throw new IllegalArgumentException("join: cannot join a tree with itself.");
+    	if(left.maxImbalance != right.maxImbalance)
+    		throw new IllegalArgumentException("join: cannot join an AVL-" + left.maxImbalance + " tree with an AVL-"
+    				+ right.maxImbalance + " tree.");
+    	if(left.multiset != right.multiset)
+    		throw new IllegalArgumentException("join: cannot join a set with a multiset.");
+    	if((left.root != null && left.max(left.root).data.compareTo(key) >= 0)
+    			|| (right.root != null && right.min(right.root).data.compareTo(key) <= 0))
+    		throw new IllegalArgumentException("join: every key of left must be smaller than key, and every key of right larger.");
+    	left.disableSweep();
+    	right.disableSweep();
+    	AVLGTree<T> joined = new AVLGTree<>(left.maxImbalance, left.multiset, null);
+    	joined.root = joined.join(left.root, joined.newNode(key), right.root);
+    	left.clear();
+    	right.clear();
+    	return joined;
+    }
+
+    /**
+     * <p>Adds every key of other to this tree. other is left unchanged; from now on, the two trees share some of
+     * their nodes, which either of them copies before changing it, as with a {@link #snapshot()}.</p>
+     *
+     * <p>Instead of inserting the keys one by one, the two trees are recursively split around each other's keys
+     * and joined back together, which costs O(m log(n/m + 1)) for trees of m &lt;= n keys: linear time for trees of
+     * similar sizes, and O(m log n) when one of them is much smaller. Above a few thousand keys, the two halves of
+     * every split are combined in parallel on the common {@link ForkJoinPool}.</p>
+     * <p>In a {@link #AVLGTree(int, boolean) multiset}, the counts of common keys add up. Likewise, an intersection
+     * keeps the smaller of the two counts, and a difference subtracts other's counts from this tree's.</p>
+     * @param other The tree whose keys we want to add. It may have any imbalance parameter.
+     * @throws IllegalArgumentException if one tree is a multiset and the other one is not.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
+     */
+    public void union(AVLGTree<T> other) {
+    	if(other == this)
+    		return;
+    	combine(SetOperation.UNION, other);
+    	if(filter != null) {
+    		for(T key : other)
+    			filter.add(key);
+    		if(filter.isOverloaded())
+    			rebuildFilter();
+    	}
+    }
+
+    /**
+     * <p>Removes from this tree every key which is not in other, leaving other unchanged. Costs
+     * O(m log(n/m + 1)), like {@link #union(AVLGTree)}, and may run in parallel like it.</p>
+     * @param other The tree holding the keys which we want to keep.
+     * @throws IllegalArgumentException if one tree is a multiset and the other one is not.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
+     */
+    public void intersect(AVLGTree<T> other) {
+    	if(other != this)
+    		combine(SetOperation.INTERSECTION, other);
+    }
+
+    /**
+     * <p>Removes from this tree every key which is in other, leaving other unchanged. Costs
+     * O(m log(n/m + 1)), like {@link #union(AVLGTree)}, and may run in parallel like it.</p>
+     * @param other The tree holding the keys which we want to remove.
+     * @throws IllegalArgumentException if one tree is a multiset and the other one is not.
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
+     */
+    public void difference(AVLGTree<T> other) {
+    	if(other == this)
+    		clear();
+    	else
+    		combine(SetOperation.DIFFERENCE, other);
+    }
+
+    /**
+     * <p>Makes the tree pick its own imbalance parameter within [minImbalance, maxImbalance], based on the recent
+     * ratio of {@link #search(Comparable) searches} to {@link #insert(Comparable) insertions} and
+     * {@link #delete(Comparable) deletions}: the more the tree is read, the tighter the bound and the shorter the
+     * searches; the more it is updated, the laxer the bound and the fewer the rotations. The mix is sampled once every
+     * thousand or so operations.</p>
+     *
+     * <p>Raising the bound needs no restructuring at all, since a tree that satisfies a bound also satisfies any
+     * larger one. Lowering it does, but instead of rebalancing the whole tree in one stop-the-world pass, every
+     * subsequent operation (including searches) advances an incremental post-order sweep by a few nodes, rotating
+     * the nodes that violate the new bound. Updates that happen in the meantime already rebalance towards the new
+     * bound. {@link #getMaxImbalance()} keeps reporting the old bound until the sweep is done, and
+     * {@link #isRebalancing()} tells whether one is in progress. Since searches may then restructure the tree,
+     * cursors over an adaptive tree may fail with a {@link ConcurrentModificationException} even if the tree
+     * is only searched.</p>
+     * @param minImbalance The tightest imbalance parameter the tree may pick, used under read-only workloads.
+     * @param maxImbalance The laxest imbalance parameter the tree may pick, used under update-only workloads.
+     * @throws InvalidBalanceException if minImbalance is smaller than 1 or larger than maxImbalance.
+     */
+    public void enableAdaptiveImbalance(int minImbalance, int maxImbalance) throws InvalidBalanceException {
+    	checkWritable("enableAdaptiveImbalance");
+    	if(minImbalance < 1 || minImbalance > maxImbalance)
+    		throw new InvalidBalanceException("Invalid adaptive imbalance bounds [" + minImbalance + ", " + maxImbalance + "].");
+    	tuner = new ImbalanceTuner(minImbalance, maxImbalance, this.maxImbalance);
+    	if(this.maxImbalance < minImbalance)
+    		this.maxImbalance = minImbalance;
+    	else if(this.maxImbalance > maxImbalance)
+    		startSweep(maxImbalance);
+    }
+
+    /**
+     * Stops adapting the imbalance parameter. The tree keeps the bound it currently satisfies, and any pending
+     * incremental lowering of the bound is abandoned.
+     */
+    public void disableAdaptiveImbalance() {
+    	tuner = null;
+    	disableSweep();
+    }
+
+    /**
+     * Query the tree for adapting its imbalance parameter.
+     * @return {@code true} if {@link #enableAdaptiveImbalance(int, int)} is in effect, {@code false} otherwise.
+     */
+    public boolean isAdaptive() {
+    	return tuner != null;
+    }
+
+    /**
+     * Query an adaptive tree for an incremental lowering of its imbalance parameter being in progress.
+     * @return {@code true} if the tree is in the middle of lowering its imbalance parameter, {@code false} otherwise.
+     */
+    public boolean isRebalancing() {
+    	return pendingImbalance > 0;
+    }
+
+    /**
+     * <p>Starts gathering {@link AVLGTreeStats statistics} about rotations and the nodes visited by searches,
+     * insertions and deletions. Until this is called, the tree gathers nothing, and the bookkeeping costs a
+     * single {@code null} check per operation. Calling this again keeps the existing statistics.</p>
+     * @return The statistics of the tree, which keep being updated as the tree is used.
+     */
+    public AVLGTreeStats enableStats() {
+    	if(stats == null)
+    		stats = new AVLGTreeStats();
+    	return stats;
+    }
+
+    /**
+     * Stops gathering statistics and drops the ones gathered so far.
+     */
+    public void disableStats() {
+    	stats = null;
+    }
+
+    /**
+     * Retrieves the statistics gathered since {@link #enableStats()} was called.
+     * @return The statistics of the tree, or {@code null} if statistics are disabled.
+     */
+    public AVLGTreeStats getStats() {
+    	return stats;
+    }
+
+    /**
+     * <p>Puts a {@link AVLGTreeFilter membership filter} in front of the tree: from now on, {@link #search(Comparable)}
+     * first asks the filter, and most searches for absent keys return {@code null} right away, without visiting a
+     * single node. Searches for present keys pay one extra hash and cache miss. The filter is sized from
+     * {@link #getCount()} and built out of the keys of the tree in O(n) time; insertions and deletions then keep it up
+     * to date. Calling this again keeps the existing filter.</p>
+     *
+     * <p>The filter needs the hash codes of keys to be consistent with {@link Comparable#compareTo(Object)}. A
+     * {@link #snapshot() snapshot} of the tree does not get the filter.</p>
+     * @return The filter, which also reports its false-positive rate.
+     */
+    public AVLGTreeFilter enableFilter() {
+    	if(filter == null) {
+    		filter = new AVLGTreeFilter(getCount());
+    		for(T key : this)
+    			filter.add(key);
+    	}
+    	return filter;
+    }
+
+    /**
+     * Removes the membership filter, if any, from the front of the tree.
+     */
+    public void disableFilter() {
+    	filter = null;
+    }
+
+    /**
+     * Retrieves the membership filter installed by {@link #enableFilter()}.
+     * @return The filter, or {@code null} if there is none.
+     */
+    public AVLGTreeFilter getFilter() {
+    	return filter;
+    }
+
+    /**
+     * <p>Rebuilds the membership filter, sized for the current {@link #getCount()}, in O(n) time. The tree does so
+     * by itself whenever it outgrows its filter. Call it after removing many keys at once, through
+     * {@link #split(Comparable)}, {@link #intersect(AVLGTree)} or {@link #difference(AVLGTree)}: the filter does not
+     * follow those, so it keeps answering "maybe" for the keys they removed, until it is rebuilt. Does nothing if the
+     * tree has no filter.</p>
+     */
+    public void rebuildFilter() {
+    	if(filter == null)
+    		return;
+    	filter.resize(getCount());
+    	for(T key : this)
+    		filter.add(key);
+    }
+
+    /*a search which the filter answered*/
+    private T filteredOut() {
+    	filter.definiteMiss();
+    	if(stats != null)
+    		stats.search(0);
+    	if(tuner != null)
+    		adapt(false);
+    	return null;
+    }
+
+    /**
+     * Retrieves the total number of single rotations performed by the tree since its creation. A double rotation
+     * counts as two single rotations.
+     * @return The total number of single rotations performed so far.
+     */
+    public long getRotationCount() {
+    	return rotations;
+    }
+
+    /**
+     * Retrieves the number of nodes visited on the way down by the most recent {@link #insert(Comparable) insertion}
+     * or {@link #delete(Comparable) deletion}.
+     * @return The length of the most recent insertion or deletion path.
+     */
+    public int getLastPathLength() {
+    	return lastPathLength;
+    }
+
+    /**
+     * Retrieves the number of nodes that the most recent {@link #insert(Comparable) insertion} or
+     * {@link #delete(Comparable) deletion} had to rebalance on its way back up. Rebalancing stops as soon as a
+     * subtree's height stays unchanged, so this is usually much smaller than {@link #getLastPathLength()}.
+     * @return The number of nodes rebalanced by the most recent insertion or deletion.
+     */
+    public int getLastRetraceLength() {
+    	return lastRetraceLength;
     }
-    
-    private Node<T> delete(Node<T> node, T key) {
-    	
-    	if(node == null || searchHelper(key, root) == null)
-    		return null;
-    	
-    	if(node.data.compareTo(key) > 0) {
-    		node.left = delete(node.left, key);
-    	}else if(node.data.compareTo(key) < 0) {
-    		node.right = delete(node.right, key);
-    	}else {
-		  	if(node.left == null || node.right == null) {
-		  		Node<T> temp = null;
-		  		if(temp == node.left) {
-		    		temp = node.right;
-		    	}else {
-		    		temp = node.left;
-		    	}
-		    	if(temp == null) {
-		    		temp = node;
-		    		node = null;
-		    	}else {
-		    		node = temp;
-		    	}
-		    }else {
-		    	Node<T> temp = min(node.right);
-	    		node.data = temp.data;
-	    		node.right = delete(node.right, temp.data);
-		    }
-    	}
-	    if(node == null) {
-	    	return node;
-	    }
-	    		
-	    int balance = balancedHelper(node);
-	    
-	    	if(balance > this.maxImbalance && balancedHelper(node.left) >= 0) {
-	    		return rRotate(node);
-	    	}
-	    	
-	    	if(balance > this.maxImbalance && balancedHelper(node.left) < 0) {
-	    		node.left = lRotate(node.left);
-	    		return rRotate(node);
-	    	}
-	    	
-	    	if(balance < -(this.maxImbalance) && balancedHelper(node.left) >= 0) {
-	    		return lRotate(node);
-	    	}
-	    	
-	    	if(balance < -(this.maxImbalance) && balancedHelper(node.left) < 0) {
-	    		node.right = rRotate(node.right);
-	    		return lRotate(node);
-	    	}
-	    	return balance(node);
-	    }
     
 
     /**
@@ -174,26 +1071,54 @@ public class AVLGTree<T extends Comparable<T>> {
     public T search(T key) throws EmptyTreeException {
     	if(root == null) 
     		throw new EmptyTreeException(null);
-    	return searchHelper(key, root);
+    	if(filter != null && !filter.mightContain(key))
+    		return filteredOut();
+    	int visited = 0;
+    	T found = null;
+    	Node<T> curr = root;
+    	while(curr != null) {
+    		visited++;
+    		int cmp = key.compareTo(curr.data);
+    		if(cmp == 0) {
+    			found = key;
+    			break;
+    		}
+    		curr = (cmp < 0) ? curr.left : curr.right;
+    	}
+    	if(filter != null && found == null)
+    		filter.falsePositive();
+    	if(stats != null)
+    		stats.search(visited);
+    	if(tuner != null)
+    		adapt(false);
+    	return found;
     }
-    
-    /*recursive search helper method*/
-    private T searchHelper(T key, Node<T> node) {
-    	if(node == null) {
-    		return null;
+
+    /*
+     * Lock-free descent used by ConcurrentAVLGTree's optimistic readers. Since a writer may be rotating nodes while
+     * we walk, the walk might see a half-rotated tree: it never trusts what it reads, and gives up by returning RETRY
+     * after maxSteps nodes (a consistent tree has no longer paths) or on a node it catches half-initialized. The
+     * caller has to validate whatever comes back against its lock stamp.
+     */
+    Object probe(T key, int maxSteps) {
+    	Node<T> curr = root;
+    	for(int steps = 0; curr != null; steps++) {
+    		T data = curr.data;
+    		if(steps > maxSteps || data == null)
+    			return RETRY;
+    		int cmp = key.compareTo(data);
+    		if(cmp == 0)
+    			return data;
+    		curr = (cmp < 0) ? curr.left : curr.right;
     	}
-    	if(key.compareTo(node.data) > 0) {
-        	return searchHelper(key, node.right);
-        }else if(key.compareTo(node.data) < 0){
-        	return searchHelper(key, node.left);
-        }else{
-        	return key;
-        }
+    	return null;
     }
-    
+
     /**
-     * Retrieves the maximum imbalance parameter.
-     * @return The maximum imbalance parameter provided as a constructor parameter.
+     * Retrieves the maximum imbalance parameter. For an {@link #enableAdaptiveImbalance(int, int) adaptive} tree,
+     * this is the bound that the whole tree currently satisfies, which may change from one operation to the next.
+     * @return The maximum imbalance parameter provided as a constructor parameter, or the current one of an
+     * adaptive tree.
      */
     public int getMaxImbalance(){
        	return this.maxImbalance;
@@ -207,7 +1132,7 @@ public class AVLGTree<T extends Comparable<T>> {
      * @return The height of the tree. If the tree is empty, returns -1.
      */
     public int getHeight() {
-       	return heightHelper(root)-1;
+       	return height(root);
     }
   
 
@@ -234,67 +1159,389 @@ public class AVLGTree<T extends Comparable<T>> {
 
 
     /**
-     * <p>Establishes whether the AVL-G tree <em>globally</em> satisfies the BST condition. This method is
-     * <b>terrifically useful for testing!</b></p>
+     * <p>Establishes whether the AVL-G tree <em>globally</em> satisfies the BST condition: every key is larger than
+     * all the keys of its left subtree and smaller than all the keys of its right subtree. This method is
+     * <b>terrifically useful for testing!</b> It runs in a single O(n) pass, which is split across all cores for
+     * large trees, like {@link #isAVLGBalanced()}.</p>
      * @return {@code true} if the tree satisfies the Binary Search Tree property,
      * {@code false} otherwise.
      */
     public boolean isBST() {
-        return isAVLGBalanced();
+        return verify(false);
     }
 
 
     /**
      * <p>Establishes whether the AVL-G tree <em>globally</em> satisfies the AVL-G condition. This method is
      * <b>terrifically useful for testing!</b></p>
+     *
+     * <p>A single bottom-up pass checks that the tree is a BST, that the imbalance of <b>every</b> node is within the
+     * bound, and that the heights, subtree sizes and key counts which the nodes cache are consistent with the actual
+     * tree, in O(n) time. Above a few thousand keys, the pass runs as a {@link RecursiveTask} on the common
+     * {@link ForkJoinPool}, so that validating a very large tree, e.g. after a {@link #readFrom(Path, KeyCodec)},
+     * uses every core.</p>
      * @return {@code true} if the tree satisfies the balance requirements of an AVLG tree, {@code false}
      * otherwise.
      */
     public boolean isAVLGBalanced() {
-        return (balancedHelper(root) <= this.maxImbalance);
+        return verify(true);
+    }
+
+    private boolean verify(boolean balanced) {
+    	if(root == null)
+    		return true;
+    	Verifier<T> verifier = new Verifier<>(root, null, null, balanced ? maxImbalance : -1, multiset);
+    	int height = (root.size >= PARALLEL_THRESHOLD) ? ForkJoinPool.commonPool().invoke(verifier) : verifier.compute();
+    	return height != Verifier.INVALID;
     }
 
     /**
      * <p>Empties the AVL-G Tree of all its elements. After a call to this method, the
      * tree should have <b>0</b> elements.</p>
+     * @throws UnsupportedOperationException if this is a read-only {@link #snapshot() snapshot}.
      */
     public void clear(){
+        checkWritable("clear");
+        modCount++;
         root = null;
+        if(filter != null)
+        	filter.clear();
+        if(pendingImbalance > 0) // An empty tree satisfies any bound.
+        	finishSweep();
     }
 
 
     /**
-     * <p>Return the number of elements in the tree.</p>
+     * <p>Return the number of elements in the tree. In a {@link #AVLGTree(int, boolean) multiset}, every
+     * repeat of a key counts.</p>
      * @return  The number of elements in the tree.
      */
     public int getCount(){
-        return getCount(root);
+        return size(root);
     }
-    
-    private int getCount(Node<T> node) {
-    	if(node != null) {
-    		return 1+getCount(node.left)+getCount(node.right);
-    	} else {
+
+    /**
+     * <p>Return the number of times key occurs in the tree: 0 or 1 in a set, any number in a
+     * {@link #AVLGTree(int, boolean) multiset}. Runs in O(log n) time.</p>
+     * @param key The key to count.
+     * @return The number of occurrences of key.
+     */
+    public int count(T key) {
+    	return countBelow(key, true) - countBelow(key, false);
+    }
+
+    /**
+     * <p>Return the <b>rank</b> of key, that is, the number of keys in the tree that are <b>strictly smaller</b>
+     * than key. The key itself does not need to be stored in the tree. Runs in O(log n) time.</p>
+     * @param key The key whose rank we want.
+     * @return The number of keys in the tree which are strictly smaller than key.
+     */
+    public int rank(T key) {
+    	return countBelow(key, false);
+    }
+
+    /**
+     * <p>Return the i-th smallest key in the tree, where the smallest key has index 0 and the largest key has
+     * index {@link #getCount()}-1. Runs in O(log n) time.</p>
+     * @param i The 0-based index of the key to retrieve.
+     * @return The i-th smallest key in the tree.
+     * @throws IndexOutOfBoundsException if i is negative or not smaller than {@link #getCount()}.
+     */
+    public T select(int i) {
+    	if(i < 0 || i >= getCount())
+    		throw new IndexOutOfBoundsException("select: index " + i + " out of bounds for a tree of " + getCount() + " keys.");
+    	Node<T> curr = root;
+    	while(true) {
+    		int leftSize = size(curr.left);
+    		if(i < leftSize) {
+    			curr = curr.left;
+    		}else if(i >= leftSize + curr.count) {
+    			i -= leftSize + curr.count;
+    			curr = curr.right;
+    		}else {
+    			return curr.data;
+    		}
+    	}
+    }
+
+    /**
+     * <p>Return the number of keys k in the tree for which lo &lt;= k &lt;= hi, both ends <b>inclusive</b>.
+     * Runs in O(log n) time.</p>
+     * @param lo The lower end of the range.
+     * @param hi The upper end of the range.
+     * @return The number of keys in [lo, hi], or 0 if lo is larger than hi.
+     */
+    public int countInRange(T lo, T hi) {
+    	if(lo.compareTo(hi) > 0)
     		return 0;
+    	return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    /**
+     * Return the largest key in the tree which is smaller than or equal to key.
+     * @param key The key to compare against.
+     * @return The largest key &lt;= key, or {@code null} if there is no such key.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T floor(T key) throws EmptyTreeException {
+    	return neighbor(key, true, true);
+    }
+
+    /**
+     * Return the smallest key in the tree which is larger than or equal to key.
+     * @param key The key to compare against.
+     * @return The smallest key &gt;= key, or {@code null} if there is no such key.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T ceiling(T key) throws EmptyTreeException {
+    	return neighbor(key, false, true);
+    }
+
+    /**
+     * Return the smallest key in the tree which is strictly larger than key.
+     * @param key The key to compare against.
+     * @return The smallest key &gt; key, or {@code null} if there is no such key.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T higher(T key) throws EmptyTreeException {
+    	return neighbor(key, false, false);
+    }
+
+    /**
+     * Return the largest key in the tree which is strictly smaller than key.
+     * @param key The key to compare against.
+     * @return The largest key &lt; key, or {@code null} if there is no such key.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T lower(T key) throws EmptyTreeException {
+    	return neighbor(key, true, false);
+    }
+
+    /**
+     * <p>Returns a lazy in-order cursor over the keys of the tree. The cursor keeps only the path to its current
+     * position, so it needs O(height) memory, no matter how large the tree is. Like the iterators of our queues,
+     * it is fail-fast: if the tree is modified after the cursor was created, the cursor's accessors throw
+     * a {@link ConcurrentModificationException}.</p>
+     * @return An {@link Iterator} over the keys of the tree, in ascending order.
+     */
+    @Override
+    public Iterator<T> iterator() {
+    	return new AVLGTreeIterator(null, null);
+    }
+
+    /**
+     * <p>Streams the keys k of the tree for which lo &lt;= k &lt;= hi, both ends <b>inclusive</b>, in ascending order.
+     * The keys are never materialized: each {@link Iterator} of the returned {@link Iterable} starts with a single
+     * O(log n) descent to lo and then walks the tree lazily, with the same fail-fast behavior as
+     * {@link #iterator()}.</p>
+     * @param lo The lower end of the range.
+     * @param hi The upper end of the range.
+     * @return An {@link Iterable} over the keys in [lo, hi]. It is empty if lo is larger than hi.
+     */
+    public Iterable<T> subRange(T lo, T hi) {
+    	return () -> new AVLGTreeIterator(lo, hi);
+    }
+
+    /**
+     * <p>Returns a new {@link Finger} over the tree: a search cursor which remembers the path to the last key it
+     * looked up, so that lookups of nearby keys start from there instead of from the root.</p>
+     * @return A new {@link Finger}, which has not looked anything up yet.
+     */
+    public Finger finger() {
+    	return new Finger();
+    }
+
+    /**
+     * <p>{@link Finger} is a search cursor for lookups with locality, such as sorted scans or clustered lookups. It
+     * remembers the root-to-node path of its last search, along with the range of keys that can live in the subtree
+     * of every node of that path. The next search only climbs that path up to the deepest subtree which may hold the
+     * new key, and descends from there. For a key at distance d (in rank) from the previous one, the descent typically
+     * visits O(log d) nodes instead of O(log n), and the climb costs O(log log n) comparisons at most, so that a full
+     * sorted scan costs O(1) comparisons per key on average. Keys which straddle a node high in the tree are the
+     * exception: their descent starts from that node.</p>
+     *
+     * <p>A finger never goes stale: if the tree was modified since its last search, it simply starts over from the root.
+     * Like the tree itself, a finger must not be shared between threads, but each thread may have fingers of its own
+     * over a {@link AVLGTree#snapshot() snapshot}.</p>
+     */
+    public class Finger {
+
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	private Node<T>[] nodes = (Node<T>[]) new Node[INITIAL_PATH_CAPACITY]; /*the path of the last search, from the root*/
+    	private Object[] lows = new Object[INITIAL_PATH_CAPACITY]; /*exclusive bounds of the keys of nodes[i]'s subtree*/
+    	private Object[] highs = new Object[INITIAL_PATH_CAPACITY];
+    	private int depth;
+    	private int expectedModCount;
+
+    	private Finger() {
+    	}
+
+    	/**
+    	 * <p>Search for key in the tree, starting from the path of the previous search. Return a reference to it if
+    	 * it's in there, or {@code null} otherwise.</p>
+    	 * @param key The key to search for.
+    	 * @return key if key is in the tree, or {@code null} otherwise.
+    	 * @throws EmptyTreeException if the tree is empty.
+    	 */
+    	public T search(T key) throws EmptyTreeException {
+    		if(root == null)
+    			throw new EmptyTreeException(null);
+    		if(filter != null && !filter.mightContain(key))
+    			return filteredOut(); // The path stays where it was.
+    		if(expectedModCount != modCount || (depth > 0 && nodes[0] != root))
+    			depth = 0;
+    		int visited = 0;
+    		if(depth > 1) {
+    			/*
+    			 * Find the deepest node of the path whose subtree may hold key. The subtrees along the path are nested and
+    			 * the root's holds everything, so gallop up from the bottom, then binary search: a climb of c levels costs
+    			 * O(log c) checks instead of c, and a far away key costs O(log log n) on top of its descent.
+    			 */
+    			int covered = depth - 1, uncovered = depth;
+    			for(int step = 1; covered > 0 && !covers(covered, key); step *= 2) {
+    				visited++;
+    				uncovered = covered;
+    				covered = Math.max(0, depth - 1 - step);
+    			}
+    			while(uncovered - covered > 1) {
+    				visited++;
+    				int mid = (covered + uncovered) >>> 1;
+    				if(covers(mid, key))
+    					covered = mid;
+    				else
+    					uncovered = mid;
+    			}
+    			Arrays.fill(nodes, covered + 1, depth, null);
+    			depth = covered + 1;
+    		}
+    		Node<T> curr = root;
+    		T lo = null, hi = null;
+    		if(depth > 0) {
+    			depth--;
+    			curr = nodes[depth];
+    			lo = low(depth);
+    			hi = high(depth);
+    		}
+    		T found = null;
+    		while(curr != null) {
+    			visited++;
+    			push(curr, lo, hi);
+    			int cmp = key.compareTo(curr.data);
+    			if(cmp == 0) {
+    				found = key;
+    				break;
+    			}
+    			if(cmp < 0) {
+    				hi = curr.data;
+    				curr = curr.left;
+    			}else {
+    				lo = curr.data;
+    				curr = curr.right;
+    			}
+    		}
+    		expectedModCount = modCount;
+    		if(filter != null && found == null)
+    			filter.falsePositive();
+    		if(stats != null)
+    			stats.search(visited);
+    		if(tuner != null)
+    			adapt(false);
+    		return found;
+    	}
+
+    	/**
+    	 * Forgets the path of the previous search, so that the next one starts from the root.
+    	 */
+    	public void reset() {
+    		Arrays.fill(nodes, 0, depth, null);
+    		depth = 0;
+    	}
+
+    	private boolean covers(int i, T key) {
+    		T lo = low(i), hi = high(i);
+    		return (lo == null || key.compareTo(lo) > 0) && (hi == null || key.compareTo(hi) < 0);
+    	}
+
+    	@SuppressWarnings("unchecked")
+    	private T low(int i) {
+    		return (T) lows[i];
+    	}
+
+    	@SuppressWarnings("unchecked")
+    	private T high(int i) {
+    		return (T) highs[i];
+    	}
+
+    	private void push(Node<T> node, T lo, T hi) {
+    		if(depth == nodes.length) {
+    			nodes = Arrays.copyOf(nodes, 2 * depth);
+    			lows = Arrays.copyOf(lows, 2 * depth);
+    			highs = Arrays.copyOf(highs, 2 * depth);
+    		}
+    		nodes[depth] = node;
+    		lows[depth] = lo;
+    		highs[depth] = hi;
+    		depth++;
     	}
     }
-    
-    /*insert recursive helper method*/
-    private Node<T> insertHelper(Node<T> node, T key) {
-
-    	if(node == null) {
-    		Node<T> temp = new Node<T>();
-    		temp.data = key;
-    		temp.left = null;
-    		temp.right = null;
-    		return temp;
-    	}
-    	if(node.data.compareTo(key) > 0) {
-    		node.left = insertHelper(node.left, key);
-    	}else {
-    		node.right = insertHelper(node.right, key);
+
+    /*
+     * In-order cursor over the keys in [lo, hi], where a null end is unbounded. The stack holds the nodes whose keys
+     * are still to be returned and whose right subtrees are still to be visited, with the next key on top.
+     */
+    private class AVLGTreeIterator implements Iterator<T> {
+
+    	private Node<T>[] stack;
+    	private int top;
+    	private int repeats; /*occurrences of the top node's key which were already returned*/
+    	private T hi;
+    	private int expectedModCount;
+
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	AVLGTreeIterator(T lo, T hi) {
+    		this.hi = hi;
+    		expectedModCount = modCount;
+    		stack = (Node<T>[]) new Node[height(root) + 2];
+    		top = 0;
+    		Node<T> curr = root;
+    		while(curr != null) {
+    			if(lo == null || curr.data.compareTo(lo) >= 0) {
+    				push(curr);
+    				curr = curr.left;
+    			}else {
+    				curr = curr.right;
+    			}
+    		}
+    	}
+
+    	private void push(Node<T> node) {
+    		if(top == stack.length)
+    			stack = Arrays.copyOf(stack, 2 * stack.length);
+    		stack[top++] = node;
+    	}
+
+    	@Override
+    	public boolean hasNext() {
+    		if(expectedModCount != modCount)
+    			throw new ConcurrentModificationException("hasNext(): Attempted to traverse tree after it was modified.");
+    		return top > 0 && (hi == null || stack[top-1].data.compareTo(hi) <= 0);
+    	}
+
+    	@Override
+    	public T next() {
+    		if(expectedModCount != modCount)
+    			throw new ConcurrentModificationException("next(): Attempted to traverse tree after it was modified.");
+    		if(!hasNext())
+    			throw new NoSuchElementException("next(): No more keys to traverse.");
+    		Node<T> node = stack[top-1];
+    		if(++repeats < node.count)
+    			return node.data;
+    		repeats = 0;
+    		stack[--top] = null;
+    		for(Node<T> curr = node.right; curr != null; curr = curr.left)
+    			push(curr);
+    		return node.data;
     	}
-    	return balance(node);
     }
     
     private Node<T> findParentNode(Node<T> node, T key){
@@ -306,17 +1553,78 @@ public class AVLGTree<T extends Comparable<T>> {
     	return findParentNode(node.right, key);
     }
     
-    /*height helper method*/
-    private int heightHelper(Node<T> node) {
+    /*
+     * Shared descent of floor() (below, inclusive), ceiling(), higher() and lower() (below, exclusive): the last node
+     * at which we turned away from the wanted side is the closest key on that side.
+     */
+    private T neighbor(T key, boolean below, boolean inclusive) throws EmptyTreeException {
+    	if(root == null)
+    		throw new EmptyTreeException(null);
+    	T best = null;
+    	Node<T> curr = root;
+    	while(curr != null) {
+    		int cmp = curr.data.compareTo(key);
+    		if(cmp == 0 && inclusive)
+    			return curr.data;
+    		if(below) {
+    			if(cmp < 0) {
+    				best = curr.data;
+    				curr = curr.right;
+    			}else {
+    				curr = curr.left;
+    			}
+    		}else {
+    			if(cmp > 0) {
+    				best = curr.data;
+    				curr = curr.left;
+    			}else {
+    				curr = curr.right;
+    			}
+    		}
+    	}
+    	return best;
+    }
+
+    /*cached height of a subtree; the null subtree has a height of -1*/
+    private int height(Node<T> node) {
+    	if(node == null)
+    		return -1;
+    	return node.height;
+    }
+
+    /*recomputes the cached fields of node from its (already up-to-date) children*/
+    private void update(Node<T> node) {
+    	node.height = 1+Math.max(height(node.left), height(node.right));
+    	node.size = node.count+size(node.left)+size(node.right);
+    }
+
+    /*cached number of keys in a subtree*/
+    private int size(Node<T> node) {
     	if(node == null)
     		return 0;
-    	return 1+Math.max(heightHelper(node.left),heightHelper(node.right));
+    	return node.size;
+    }
+
+    /*number of keys smaller than (or, if inclusive, equal to) key, in one root-to-leaf descent*/
+    private int countBelow(T key, boolean inclusive) {
+    	int count = 0;
+    	Node<T> curr = root;
+    	while(curr != null) {
+    		int cmp = key.compareTo(curr.data);
+    		if(cmp > 0 || (inclusive && cmp == 0)) {
+    			count += size(curr.left) + curr.count;
+    			curr = curr.right;
+    		}else {
+    			curr = curr.left;
+    		}
+    	}
+    	return count;
     }
 
     private int balancedHelper(Node<T> node) {
     	if(node == null)
     		return 0;
-    	return (heightHelper(node.left) - heightHelper(node.right));
+    	return (height(node.left) - height(node.right));
     }
     
     private Node<T> lRRotate(Node<T> node){
@@ -331,39 +1639,507 @@ public class AVLGTree<T extends Comparable<T>> {
     	return node;
     }
     
+    /*stores node at position depth of the path, growing the path if the tree has become deeper than it*/
+    private void push(int depth, Node<T> node) {
+    	if(depth == path.length)
+    		path = Arrays.copyOf(path, 2 * path.length);
+    	path[depth] = node;
+    }
+
+    /*the bound that rebalancing enforces: the pending one while a sweep is lowering maxImbalance*/
+    private int bound() {
+    	return (pendingImbalance > 0) ? pendingImbalance : maxImbalance;
+    }
+
+    /*counts an operation of an adaptive tree, retunes the bound when the tuner says so, and advances the sweep*/
+    private void adapt(boolean write) {
+    	int target = tuner.record(write);
+    	if(target > 0 && target != bound()) {
+    		if(target >= maxImbalance) {
+    			/*raising the bound needs no restructuring; it also cancels any lowering in progress*/
+    			maxImbalance = target;
+    			disableSweep();
+    		}else if(pendingImbalance > 0) {
+    			/*keep sweeping; what was already swept only satisfies sweepImbalance, and finishSweep() knows it*/
+    			pendingImbalance = target;
+    			sweepImbalance = Math.max(sweepImbalance, target);
+    		}else {
+    			startSweep(target);
+    		}
+    	}
+    	if(pendingImbalance > 0)
+    		sweep(SWEEP_BUDGET);
+    }
+
+    /*abandons the lowering in progress, if any; an adaptive tree will start over at the end of the next window*/
+    private void disableSweep() {
+    	pendingImbalance = 0;
+    	Arrays.fill(sweepStack, 0, sweepTop, null);
+    	sweepTop = 0;
+    }
+
+    private void startSweep(int target) {
+    	pendingImbalance = sweepImbalance = target;
+    	Arrays.fill(sweepStack, 0, sweepTop, null);
+    	sweepTop = 0;
+    	if(root != null)
+    		pushSweep(root);
+    	else
+    		finishSweep();
+    }
+
+    /*the sweep is done: the whole tree satisfies sweepImbalance, so another sweep is due if the target dropped since*/
+    private void finishSweep() {
+    	maxImbalance = (root == null) ? pendingImbalance : sweepImbalance;
+    	if(maxImbalance > pendingImbalance) {
+    		startSweep(pendingImbalance);
+    	}else {
+    		disableSweep();
+    	}
+    }
+
+    private void pushSweep(Node<T> node) {
+    	if(sweepTop == sweepStack.length) {
+    		sweepStack = Arrays.copyOf(sweepStack, 2 * sweepStack.length);
+    		sweepState = Arrays.copyOf(sweepState, 2 * sweepState.length);
+    	}
+    	sweepStack[sweepTop] = node;
+    	sweepState[sweepTop++] = 0;
+    }
+
+    /*
+     * Advances the post-order sweep by up to budget steps. Updates since the last call may have rotated nodes of the
+     * sweep's stack away; the stack is then cut back to its deepest prefix which is still a root path, and the side
+     * of the last node which we were working on is visited again. Whatever was already swept stays within the new
+     * bound, because updates rebalance towards it. The sweep, and the lowering, are done once the root is repaired.
+     */
+    private void sweep(int budget) {
+    	resumeSweep();
+    	while(budget-- > 0 && pendingImbalance > 0) {
+    		int top = sweepTop - 1;
+    		Node<T> node = sweepStack[top];
+    		if(sweepState[top] == 0) {
+    			sweepState[top] = 1;
+    			if(node.left != null)
+    				pushSweep(node.left);
+    		}else if(sweepState[top] == 1) {
+    			sweepState[top] = 2;
+    			if(node.right != null)
+    				pushSweep(node.right);
+    		}else {
+    			boolean repaired = Math.abs(balancedHelper(node)) > pendingImbalance;
+    			if(repaired)
+    				repair(top);
+    			sweepStack[top] = null;
+    			sweepTop = top;
+    			if(top == 0)
+    				finishSweep();
+    			else if(repaired)
+    				resumeSweep(); // Retracing may have rotated the ancestors.
+    		}
+    	}
+    }
+
+    /*cuts the sweep's stack back to its deepest prefix which is still a root path*/
+    private void resumeSweep() {
+    	if(sweepTop == 0 || sweepStack[0] != root) {
+    		startSweep(pendingImbalance);
+    		return;
+    	}
+    	for(int i = 1; i < sweepTop; i++) {
+    		if(sweepStack[i-1].left != sweepStack[i] && sweepStack[i-1].right != sweepStack[i]) {
+    			Arrays.fill(sweepStack, i, sweepTop, null);
+    			sweepTop = i;
+    			sweepState[i-1]--;
+    			return;
+    		}
+    	}
+    }
+
+    /*
+     * Brings the node at position depth of the sweep's stack, whose subtrees already satisfy the pending bound, within
+     * that bound too, and rebalances its ancestors like a deletion would, since repairing a subtree may lower it.
+     */
+    private void repair(int depth) {
+    	for(int i = 0; i <= depth; i++)
+    		push(i, sweepStack[i]);
+    	ownPath(depth + 1);
+    	for(int i = 0; i <= depth; i++)
+    		sweepStack[i] = path[i];
+    	Node<T> node = path[depth];
+    	Node<T> repaired = fix(node, 4 * (node.height + 1));
+    	path[depth] = null;
+    	if(depth == 0) {
+    		root = repaired;
+    	}else {
+    		relink(path[depth-1], node, repaired);
+    		root = retrace(depth, 0);
+    	}
+    	modCount++;
+    }
+
+    /*
+     * Rotates node, whose subtrees satisfy the bound, until it satisfies the bound too. Every rotation may leave
+     * the nodes that it moved down out of balance, so those are fixed recursively (they are strictly lower). If this
+     * takes more than budget rotations, the subtree is rebuilt from scratch instead.
+     */
+    private Node<T> fix(Node<T> node, int budget) {
+    	while(Math.abs(balancedHelper(node)) > bound()) {
+    		if(budget-- <= 0)
+    			return rebuild(node);
+    		node = balance(node);
+    		if(Math.abs(balancedHelper(node.left)) > bound())
+    			node.left = fix(node.left, budget);
+    		if(Math.abs(balancedHelper(node.right)) > bound())
+    			node.right = fix(node.right, budget);
+    		update(node);
+    	}
+    	return node;
+    }
+
+    /*replaces a subtree with a perfectly balanced one holding the same keys*/
+    private Node<T> rebuild(Node<T> node) {
+    	ArrayList<Node<T>> nodes = new ArrayList<>(node.size);
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	Node<T>[] stack = (Node<T>[]) new Node[height(node) + 2];
+    	int top = 0;
+    	Node<T> curr = node;
+    	while(curr != null || top > 0) {
+    		while(curr != null) {
+    			stack[top++] = curr;
+    			curr = curr.left;
+    		}
+    		curr = stack[--top];
+    		nodes.add(curr);
+    		curr = curr.right;
+    	}
+    	return build(nodes, 0, nodes.size());
+    }
+
+    /*builds a perfectly balanced subtree out of fresh copies of nodes[from, to)*/
+    private Node<T> build(List<Node<T>> nodes, int from, int to) {
+    	if(from == to)
+    		return null;
+    	int mid = (from + to) >>> 1;
+    	Node<T> node = newNode(nodes.get(mid).data);
+    	node.count = nodes.get(mid).count;
+    	node.left = build(nodes, from, mid);
+    	node.right = build(nodes, mid + 1, to);
+    	update(node);
+    	return node;
+    }
+
+    private void checkWritable(String operation) {
+    	if(frozen)
+    		throw new UnsupportedOperationException(operation + ": Snapshots of AVL-G trees are read-only.");
+    }
+
+    /*a fresh stub holding key, owned by the current epoch*/
+    private Node<T> newNode(T key) {
+    	Node<T> node = new Node<T>();
+    	node.data = key;
+    	node.epoch = epoch;
+    	return node;
+    }
+
+    /*
+     * Returns node itself if this tree may change it, or otherwise (that is, if node is shared with a snapshot)
+     * a private copy of it which the caller has to link in its place.
+     */
+    private Node<T> own(Node<T> node) {
+    	if(node == null || node.epoch == epoch)
+    		return node;
+    	Node<T> copy = new Node<T>();
+    	copy.data = node.data;
+    	copy.left = node.left;
+    	copy.right = node.right;
+    	copy.height = node.height;
+    	copy.count = node.count;
+    	copy.size = node.size;
+    	copy.epoch = epoch;
+    	return copy;
+    }
+
+    /*
+     * Path copying: makes sure that the first depth nodes of the path may be changed, by replacing every node shared
+     * with a snapshot with a private copy and relinking it under its (already private) parent. The copy of path[0]
+     * is not linked anywhere; callers pick it up through retrace(). Costs nothing if no snapshot was ever taken.
+     */
+    private void ownPath(int depth) {
+    	for(int i = 0; i < depth; i++) {
+    		Node<T> node = path[i];
+    		if(node.epoch != epoch) {
+    			path[i] = own(node);
+    			if(i > 0)
+    				relink(path[i-1], node, path[i]);
+    		}
+    	}
+    }
+
+    /*makes newChild take the place of oldChild under parent*/
+    private void relink(Node<T> parent, Node<T> oldChild, Node<T> newChild) {
+    	if(parent.left == oldChild) {
+    		parent.left = newChild;
+    	}else {
+    		parent.right = newChild;
+    	}
+    }
+
+    /*
+     * Walks the first depth nodes of the path bottom-up after a subtree below them changed by delta keys, rebalancing
+     * every node whose subtree height may have changed. As soon as a rebalanced subtree ends up with the height it had
+     * before the update, nothing above it can be out of balance, so the remaining ancestors only get their sizes fixed.
+     * Returns the node that ends up in the place of path[0].
+     */
+    private Node<T> retrace(int depth, int delta) {
+    	int retraced = 0;
+    	boolean heightChanged = true;
+    	Node<T> node = null;
+    	for(int i = depth-1; i >= 0; i--) {
+    		node = path[i];
+    		if(heightChanged) {
+    			int oldHeight = node.height;
+    			Node<T> subtree = balance(node);
+    			if(i > 0 && subtree != node) {
+    				relink(path[i-1], node, subtree);
+    			}
+    			heightChanged = (subtree.height != oldHeight);
+    			node = subtree;
+    			retraced++;
+    		}else {
+    			node.size += delta;
+    		}
+    		path[i] = null;
+    	}
+    	lastRetraceLength = retraced;
+    	return node;
+    }
+
+    /*
+     * Joins the trees left and right with the detached, owned node middle in between, where every key of left is
+     * smaller than middle's and every key of right is larger. If the two heights are too far apart to simply hang
+     * both trees under middle, middle is attached along the inner spine of the taller tree, at the first subtree which
+     * is no more than the bound higher than the shorter tree, and the spine is then rebalanced on the way back up like
+     * an insertion path. Costs O(|height(left) - height(right)| + 1). Touches no field of the tree other than the
+     * nodes it is handed, so the set operations may run it on several threads at once.
+     */
+    private Node<T> join(Node<T> left, Node<T> middle, Node<T> right) {
+    	int hl = height(left), hr = height(right);
+    	int bound = bound();
+    	if(hl > hr + bound) {
+    		Node<T> node = own(left);
+    		node.right = join(node.right, middle, right);
+    		return balance(node, false);
+    	}
+    	if(hr > hl + bound) {
+    		Node<T> node = own(right);
+    		node.left = join(left, middle, node.left);
+    		return balance(node, false);
+    	}
+    	middle.left = left;
+    	middle.right = right;
+    	update(middle);
+    	return middle;
+    }
+
+    /*joins two trees, every key of left being smaller than every key of right, without a node in between*/
+    private Node<T> join(Node<T> left, Node<T> right) {
+    	if(left == null)
+    		return right;
+    	if(right == null)
+    		return left;
+    	Split<T> last = splitLast(left);
+    	return join(last.left, own(last.match), right);
+    }
+
+    /*
+     * Splits the subtree of node around key: the result holds the subtree of the keys smaller than key, the node that
+     * holds key (if any, detached from the tree) and the subtree of the keys larger than key. Costs O(log n), since
+     * the joins along the way telescope.
+     */
+    private Split<T> split(Node<T> node, T key) {
+    	if(node == null)
+    		return new Split<>(null, null, null);
+    	int cmp = key.compareTo(node.data);
+    	if(cmp == 0)
+    		return new Split<>(node.left, node, node.right);
+    	Node<T> left = node.left, right = node.right;
+    	if(cmp < 0) {
+    		Split<T> split = split(left, key);
+    		split.right = join(split.right, own(node), right);
+    		return split;
+    	}else {
+    		Split<T> split = split(right, key);
+    		split.left = join(left, own(node), split.left);
+    		return split;
+    	}
+    }
+
+    /*splits the largest key off a non-empty subtree: the result holds the remaining subtree and the detached node*/
+    private Split<T> splitLast(Node<T> node) {
+    	if(node.right == null)
+    		return new Split<>(node.left, node, null);
+    	Node<T> left = node.left;
+    	Split<T> split = splitLast(node.right);
+    	split.left = join(left, own(node), split.left);
+    	return split;
+    }
+
+    /*
+     * The join-based set operations of Blelloch, Ferizovic and Sun: a's root key splits b, the two halves are
+     * combined recursively (in parallel, when they are large enough), and the results are joined back, with or
+     * without a's root depending on the operation and on whether b holds that key too. Costs O(m log(n/m + 1)) for
+     * trees of m <= n keys. The nodes of a are reused in place when the tree owns them; those of b are only ever
+     * read, or copied.
+     */
+    private Node<T> combine(SetOperation operation, Node<T> a, Node<T> b) {
+    	if(a == null)
+    		return (operation == SetOperation.UNION) ? b : null;
+    	if(b == null)
+    		return (operation == SetOperation.INTERSECTION) ? null : a;
+    	Node<T> aLeft = a.left, aRight = a.right;
+    	int work = a.size + b.size;
+    	Split<T> split = split(b, a.data);
+    	Node<T> left, right;
+    	if(work >= PARALLEL_THRESHOLD) {
+    		ForkJoinTask<Node<T>> task = ForkJoinTask.adapt(() -> combine(operation, aLeft, split.left)).fork();
+    		right = combine(operation, aRight, split.right);
+    		left = task.join();
+    	}else {
+    		left = combine(operation, aLeft, split.left);
+    		right = combine(operation, aRight, split.right);
+    	}
+    	int count = a.count;
+    	if(split.match != null) {
+    		/*in multisets, the counts combine; in sets, they are all 1, and this boils down to keeping a's key or not*/
+    		if(operation == SetOperation.UNION)
+    			count += split.match.count;
+    		else if(operation == SetOperation.INTERSECTION)
+    			count = Math.min(count, split.match.count);
+    		else
+    			count -= split.match.count;
+    	}else if(operation == SetOperation.INTERSECTION) {
+    		count = 0;
+    	}
+    	if(count <= 0)
+    		return join(left, right);
+    	Node<T> middle = own(a);
+    	middle.count = multiset ? count : 1;
+    	return join(left, middle, right);
+    }
+
+    /*runs a set operation with other and installs the result; large ones run on the common ForkJoinPool*/
+    private void combine(SetOperation operation, AVLGTree<T> other) {
+    	checkWritable(operation.name().toLowerCase());
+    	if(multiset != other.multiset)
+    		throw new IllegalArgumentException(operation.name().toLowerCase() + ": cannot combine a set with a multiset.");
+    	if(pendingImbalance > 0)
+    		disableSweep(); // The operands must satisfy the bound that joins enforce.
+    	/*subtrees of other end up in a union as they are: they must satisfy our bound, and other may no longer change them*/
+    	Node<T> b = (operation == SetOperation.UNION && other.maxImbalance > bound() && other.root != null)
+    			? rebuild(other.root) : other.root;
+    	if(operation == SetOperation.UNION && b == other.root)
+    		other.share();
+    	Node<T> a = root;
+    	if(size(a) + size(b) >= PARALLEL_THRESHOLD)
+    		root = ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> combine(operation, a, b)));
+    	else
+    		root = combine(operation, a, b);
+    	modCount++;
+    }
+
+    /*from now on, this tree may not change its current nodes in place, since another tree may be sharing them*/
+    private void share() {
+    	if(!frozen)
+    		epoch = EPOCHS.incrementAndGet();
+    }
+
+    /*builds a perfectly balanced subtree out of the next n keys of source, in O(n) time*/
+    private Node<T> build(SortedSource<T> source, int n) {
+    	if(n == 0)
+    		return null;
+    	int leftSize = (n-1)/2;
+    	Node<T> left = build(source, leftSize);
+    	Node<T> node = newNode(source.next());
+    	node.left = left;
+    	node.right = build(source, n-1-leftSize);
+    	update(node);
+    	return node;
+    }
+
     private Node<T> lRotate(Node<T> node) {
-    	Node<T> newRoot = node.right;
+    	node = own(node);
+    	Node<T> newRoot = own(node.right);
     	node.right = newRoot.left;
     	newRoot.left = node;
+    	update(node);
+    	update(newRoot);
     	return newRoot;
     }
     
     private Node<T> rRotate(Node<T> node) {
-    	Node<T> newRoot = node.left;
+    	node = own(node);
+    	Node<T> newRoot = own(node.left);
     	node.left = newRoot.right;
     	newRoot.right = node;
+    	update(node);
+    	update(newRoot);
     	return newRoot;
     }
     
     private Node<T> balance(Node<T> node){
+    	return balance(node, true);
+    }
+
+    /*
+     * Rebalances node with a single or a double rotation if it is out of balance. Only counted rotations make it
+     * into the rotation count and the statistics; the set operations, which may run on several threads at once,
+     * do not count theirs.
+     */
+    private Node<T> balance(Node<T> node, boolean counted){
+    	if(node == null)
+    		return null;
+    	node = own(node);
+    	update(node);
     	int balance = balancedHelper(node);
-    	if(balance > this.maxImbalance) {
+    	int bound = bound();
+    	if(balance > bound) {
     		if(balancedHelper(node.left) >= 0) {
+    			if(counted)
+    				singleRotation();
     			return rRotate(node);
     		}else {
+    			if(counted)
+    				doubleRotation();
     			node.left = lRotate(node.left);
     			return rRotate(node);
     		}
     	}
-    	if(balance < -(this.maxImbalance)) {
+    	if(balance < -bound) {
     		if(balancedHelper(node.right) <= 0) {
+    			if(counted)
+    				singleRotation();
     			return lRotate(node);
     		}else {
+    			if(counted)
+    				doubleRotation();
     			node.right = rRotate(node.right);
     			return lRotate(node);
     		}
     	}
     	return node;
     }
+
+    private void singleRotation() {
+    	rotations++;
+    	if(stats != null)
+    		stats.singleRotation();
+    }
+
+    private void doubleRotation() {
+    	rotations += 2;
+    	if(stats != null)
+    		stats.doubleRotation();
+    }
     
 }
@@ -0,0 +1,195 @@
+package avlg;
+
+import java.util.Arrays;
+
+/**
+ * <p>{@link AVLGTreeFilter} is a counting Bloom filter which an {@link AVLGTree} consults before searching, so that
+ * most searches for absent keys return without walking the tree at all. Every key sets {@value #PROBES} counters,
+ * all of which lie in a single block of {@value #BLOCK} counters, i.e. a single cache line: a lookup costs one hash
+ * and one cache miss, instead of a root-to-leaf walk. Counters, unlike bits, can be decremented, so the filter
+ * follows deletions as well as insertions, and never answers "absent" for a key which is in the tree.</p>
+ *
+ * <p>The filter is sized from the tree's {@link AVLGTree#getCount()} with {@value #COUNTERS_PER_KEY} counters per
+ * key, which keeps its false-positive rate around 1%. When the tree grows to twice the size that the filter was built
+ * for, the tree rebuilds the filter at the new size, so that the rate stays put. Operations which remove many keys at
+ * once, such as {@link AVLGTree#difference(AVLGTree)}, leave the filter valid but looser than it needs to be, which
+ * {@link AVLGTree#rebuildFilter()} fixes.</p>
+ *
+ * <p>The filter hashes keys with {@link Object#hashCode()}, so it requires that keys which are equal according to
+ * {@link Comparable#compareTo(Object)} have equal hash codes. Like {@link AVLGTreeStats}, it is not synchronized.</p>
+ *
+ * @see AVLGTree#enableFilter()
+ */
+public class AVLGTreeFilter {
+
+	/**
+	 * The number of counters per block, each block being as large as a cache line.
+	 */
+	static final int BLOCK = 64;
+
+	/**
+	 * The number of counters set by every key.
+	 */
+	static final int PROBES = 7;
+
+	/**
+	 * The number of counters allotted per key of the tree.
+	 */
+	static final int COUNTERS_PER_KEY = 10;
+
+	private static final int MIN_CAPACITY = 1024;
+	private static final int MAX_BLOCKS = 1 << 22; /*the block index takes the 22 bits of the hash which the probes leave*/
+
+	private byte[] counters; /*a counter which reaches Byte.MAX_VALUE sticks there, since its true count is lost*/
+	private int blockMask;
+	private int capacity;
+	private int keys;
+	private long definiteMisses;
+	private long falsePositives;
+
+	AVLGTreeFilter(int expectedKeys) {
+		resize(expectedKeys);
+	}
+
+	/* ************************* RECORDING, CALLED BY AVLGTree ************************* */
+
+	/*empties the filter and sizes it for expectedKeys keys; the tree then adds its keys back*/
+	void resize(int expectedKeys) {
+		capacity = Math.max(expectedKeys, MIN_CAPACITY);
+		int blocks = Integer.highestOneBit((int)Math.min(MAX_BLOCKS, ((long)capacity * COUNTERS_PER_KEY + BLOCK - 1) / BLOCK) * 2 - 1);
+		counters = new byte[blocks * BLOCK];
+		blockMask = blocks - 1;
+		keys = 0;
+	}
+
+	void add(Object key) {
+		long hash = mix(key.hashCode());
+		int base = block(hash);
+		for(int i = 0; i < PROBES; i++) {
+			int at = base + probe(hash, i);
+			if(counters[at] != Byte.MAX_VALUE)
+				counters[at]++;
+		}
+		keys++;
+	}
+
+	void remove(Object key) {
+		long hash = mix(key.hashCode());
+		int base = block(hash);
+		for(int i = 0; i < PROBES; i++) {
+			int at = base + probe(hash, i);
+			if(counters[at] != Byte.MAX_VALUE)
+				counters[at]--;
+		}
+		keys--;
+	}
+
+	boolean mightContain(Object key) {
+		long hash = mix(key.hashCode());
+		int base = block(hash);
+		for(int i = 0; i < PROBES; i++)
+			if(counters[base + probe(hash, i)] == 0)
+				return false;
+		return true;
+	}
+
+	void definiteMiss() {
+		definiteMisses++;
+	}
+
+	void falsePositive() {
+		falsePositives++;
+	}
+
+	void clear() {
+		Arrays.fill(counters, (byte)0);
+		keys = 0;
+	}
+
+	/*true once the tree has outgrown the filter, which should then be rebuilt at the new size*/
+	boolean isOverloaded() {
+		return keys > 2 * capacity;
+	}
+
+	/* the offsets within the block come from the low 42 bits of the hash, and the block from the other 22 */
+	private int block(long hash) {
+		return ((int)(hash >>> (6 * PROBES)) & blockMask) * BLOCK;
+	}
+
+	private static int probe(long hash, int i) {
+		return (int)(hash >>> (6 * i)) & (BLOCK - 1);
+	}
+
+	/* the finalizer of MurmurHash3, so that poor hash codes such as those of Integer spread over all the bits */
+	private static long mix(int hashCode) {
+		long h = hashCode * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/* ************************* SCRAPING ************************* */
+
+	/**
+	 * @return The number of keys that the filter was sized for.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return The number of keys (counting repeats) currently in the filter.
+	 */
+	public int getKeyCount() {
+		return keys;
+	}
+
+	/**
+	 * @return The number of searches which the filter answered on its own, without touching the tree.
+	 */
+	public long getDefiniteMisses() {
+		return definiteMisses;
+	}
+
+	/**
+	 * @return The number of searches which got past the filter but did not find their key in the tree.
+	 */
+	public long getFalsePositives() {
+		return falsePositives;
+	}
+
+	/**
+	 * @return The measured false-positive rate: the share of the searches for absent keys which the filter let
+	 * through to the tree, or 0 if there were no such searches.
+	 */
+	public double getFalsePositiveRate() {
+		long misses = definiteMisses + falsePositives;
+		return misses == 0 ? 0 : falsePositives / (double)misses;
+	}
+
+	/**
+	 * @return The false-positive rate that the filter should have at its current load, which ignores the uneven
+	 * load of the blocks and thus slightly underestimates the real one.
+	 */
+	public double getExpectedFalsePositiveRate() {
+		double keysPerCounter = keys / (double)counters.length;
+		return Math.pow(1 - Math.exp(-PROBES * keysPerCounter), PROBES);
+	}
+
+	/**
+	 * Zeroes the counters of definite misses and false positives; the contents of the filter stay.
+	 */
+	public void reset() {
+		definiteMisses = falsePositives = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("filter of %d counters for %d keys (capacity %d): %d definite misses, %d false positives "
+				+ "(%.4f measured, %.4f expected)", counters.length, keys, capacity, definiteMisses, falsePositives,
+				getFalsePositiveRate(), getExpectedFalsePositiveRate());
+	}
+}
@@ -0,0 +1,449 @@
+package avlg;
+
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>{@link AVLGTreeMap} is an ordered map built on the same AVL-G balancing as {@link AVLGTree}: every node holds a
+ * key and its value, so that looking a value up, or changing it, takes a single descent, instead of a search in a
+ * tree followed by a lookup in a separate {@link java.util.HashMap}.</p>
+ *
+ * <p>Every method descends the tree <b>exactly once</b>. Updates remember their root-to-leaf path on the way
+ * down, so that an upsert which misses the key attaches the new node right where the descent ended, and a removal
+ * walks on from the removed node to its successor, instead of searching for it again. The path is then rebalanced
+ * bottom-up, stopping early as soon as heights stop changing, like in {@link AVLGTree}.</p>
+ *
+ * <p>The methods follow the contracts of their namesakes in {@link java.util.Map}: in particular, an empty map
+ * simply does not contain any key, and a remapping function which returns {@code null} removes the mapping.
+ * {@code null} keys are not allowed.</p>
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @see AVLGTree
+ */
+public class AVLGTreeMap<K extends Comparable<K>, V> {
+
+	private static class Node<K, V> {
+		private K key;
+		private V value;
+		private Node<K, V> left;
+		private Node<K, V> right;
+		private int height; /* cached: a stub has a height of 0 */
+		private int size = 1; /* cached: number of mappings in the subtree rooted here */
+
+		private Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private static final int INITIAL_PATH_CAPACITY = 64;
+
+	private Node<K, V> root;
+	private final int maxImbalance;
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Node<K, V>[] path = (Node<K, V>[]) new Node[INITIAL_PATH_CAPACITY]; /*reusable root-to-leaf path of the current update*/
+	private int depth; /*number of nodes on the path, after find()*/
+	private int modCount; /*bumped by every update, so that updates from within a (re)mapping function are caught*/
+
+    /**
+     * The class constructor provides the map with the maximum imbalance allowed.
+     * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree underneath.
+     * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+     */
+    public AVLGTreeMap(int maxImbalance) throws InvalidBalanceException {
+    	if(maxImbalance < 1)
+    		throw new InvalidBalanceException(null);
+    	this.maxImbalance = maxImbalance;
+    }
+
+    /**
+     * Returns the value mapped to key.
+     * @param key The key whose value we want.
+     * @return The value mapped to key, or {@code null} if there is none.
+     */
+    public V get(K key) {
+    	Node<K, V> curr = root;
+    	while(curr != null) {
+    		int cmp = key.compareTo(curr.key);
+    		if(cmp == 0)
+    			return curr.value;
+    		curr = (cmp < 0) ? curr.left : curr.right;
+    	}
+    	return null;
+    }
+
+    /**
+     * Query the map for a mapping of key.
+     * @param key The key to look for.
+     * @return {@code true} if key is mapped to a value, {@code false} otherwise.
+     */
+    public boolean containsKey(K key) {
+    	Node<K, V> curr = root;
+    	while(curr != null) {
+    		int cmp = key.compareTo(curr.key);
+    		if(cmp == 0)
+    			return true;
+    		curr = (cmp < 0) ? curr.left : curr.right;
+    	}
+    	return false;
+    }
+
+    /**
+     * Maps key to value, replacing the value that key was mapped to, if any.
+     * @param key The key to map.
+     * @param value The value to map it to.
+     * @return The value that key was mapped to before, or {@code null} if there was none.
+     */
+    public V put(K key, V value) {
+    	Node<K, V> node = find(key);
+    	if(node != null) {
+    		clearPath();
+    		V old = node.value;
+    		node.value = value;
+    		return old;
+    	}
+    	attach(key, value);
+    	return null;
+    }
+
+    /**
+     * If key is not mapped to a value yet, maps it to the value that mappingFunction computes out of it, unless that
+     * value is {@code null}.
+     * @param key The key to map.
+     * @param mappingFunction The function computing the value of a new mapping.
+     * @return The value that key is mapped to afterwards, or {@code null} if there is none.
+     * @throws ConcurrentModificationException if mappingFunction modifies the map.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    	Node<K, V> node = find(key);
+    	if(node != null && node.value != null) {
+    		clearPath();
+    		return node.value;
+    	}
+    	V value = apply(() -> mappingFunction.apply(key));
+    	if(value == null) {
+    		clearPath();
+    		return null;
+    	}
+    	if(node != null) {
+    		clearPath();
+    		node.value = value;
+    	}else {
+    		attach(key, value);
+    	}
+    	return value;
+    }
+
+    /**
+     * If key is not mapped to a value yet, maps it to value. Otherwise, maps it to the result of remappingFunction
+     * applied to its current value and value, or removes its mapping if that result is {@code null}.
+     * @param key The key to map.
+     * @param value The value to map key to if it is not mapped yet, and the second argument of remappingFunction.
+     * @param remappingFunction The function combining the current value with value.
+     * @return The value that key is mapped to afterwards, or {@code null} if there is none.
+     * @throws NullPointerException if value is {@code null}.
+     * @throws ConcurrentModificationException if remappingFunction modifies the map.
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    	if(value == null)
+    		throw new NullPointerException("merge: value");
+    	Node<K, V> node = find(key);
+    	if(node == null) {
+    		attach(key, value);
+    		return value;
+    	}
+    	V old = node.value;
+    	V merged = (old == null) ? value : apply(() -> remappingFunction.apply(old, value));
+    	if(merged == null) {
+    		detach(node);
+    	}else {
+    		clearPath();
+    		node.value = merged;
+    	}
+    	return merged;
+    }
+
+    /**
+     * Removes the mapping of key, if any.
+     * @param key The key whose mapping we want to remove.
+     * @return The value that key was mapped to, or {@code null} if there was none.
+     */
+    public V remove(K key) {
+    	Node<K, V> node = find(key);
+    	if(node == null) {
+    		clearPath();
+    		return null;
+    	}
+    	V old = node.value;
+    	detach(node);
+    	return old;
+    }
+
+    /**
+     * Retrieves the maximum imbalance parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter.
+     */
+    public int getMaxImbalance() {
+    	return maxImbalance;
+    }
+
+    /**
+     * Return the height of the tree underneath, which is -1 for an empty map.
+     * @return The height of the tree underneath.
+     */
+    public int getHeight() {
+    	return height(root);
+    }
+
+    /**
+     * Return the number of mappings in the map.
+     * @return The number of mappings in the map.
+     */
+    public int getCount() {
+    	return size(root);
+    }
+
+    /**
+     * Query the map for emptiness.
+     * @return {@code true} if the map holds no mappings, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+    	return root == null;
+    }
+
+    /**
+     * Removes every mapping from the map.
+     */
+    public void clear() {
+    	modCount++;
+    	root = null;
+    }
+
+    /**
+     * Establishes whether every node of the tree underneath satisfies the AVL-G condition, in a single pass
+     * over the whole tree, which also checks the order of the keys and the cached heights and sizes.
+     * @return {@code true} if the tree satisfies the balance requirements of an AVLG tree, {@code false} otherwise.
+     */
+    public boolean isAVLGBalanced() {
+    	return verify();
+    }
+
+    /*
+     * The single descent shared by all updates: returns the node holding key, or null, and leaves the path to it
+     * (excluding the node itself) in path[0, depth). Every caller either rebalances or clears the path afterwards.
+     */
+    private Node<K, V> find(K key) {
+    	modCount++;
+    	depth = 0;
+    	Node<K, V> curr = root;
+    	while(curr != null) {
+    		int cmp = key.compareTo(curr.key);
+    		if(cmp == 0)
+    			return curr;
+    		push(depth++, curr);
+    		curr = (cmp < 0) ? curr.left : curr.right;
+    	}
+    	return null;
+    }
+
+    /*
+     * Runs a user function in the middle of an update. If it updates the map itself, the path which the update is
+     * about to use is gone, so that is detected and refused, like java.util.HashMap does.
+     */
+    private V apply(Supplier<V> function) {
+    	int expectedModCount = modCount;
+    	V result;
+    	try {
+    		result = function.get();
+    	}catch(RuntimeException | Error e) {
+    		clearPath();
+    		throw e;
+    	}
+    	if(modCount != expectedModCount)
+    		throw new ConcurrentModificationException("The (re)mapping function must not modify the map.");
+    	return result;
+    }
+
+    private void clearPath() {
+    	Arrays.fill(path, 0, depth, null);
+    }
+
+    /*hangs a new node under the last node of the path which find() left behind, and rebalances the path*/
+    private void attach(K key, V value) {
+    	Node<K, V> leaf = new Node<>(key, value);
+    	if(depth == 0) {
+    		root = leaf;
+    		return;
+    	}
+    	Node<K, V> parent = path[depth-1];
+    	if(key.compareTo(parent.key) < 0) {
+    		parent.left = leaf;
+    	}else {
+    		parent.right = leaf;
+    	}
+    	root = retrace(depth, 1);
+    }
+
+    /*unlinks the node which find() stopped at, walking on to its successor if it has two children*/
+    private void detach(Node<K, V> node) {
+    	Node<K, V> target = node;
+    	if(node.left != null && node.right != null) {
+    		push(depth++, node);
+    		target = node.right;
+    		while(target.left != null) {
+    			push(depth++, target);
+    			target = target.left;
+    		}
+    		node.key = target.key;
+    		node.value = target.value;
+    	}
+    	Node<K, V> child = (target.left != null) ? target.left : target.right;
+    	if(depth == 0) {
+    		root = child;
+    	}else {
+    		relink(path[depth-1], target, child);
+    		root = retrace(depth, -1);
+    	}
+    }
+
+    /* ******************************************************** *
+     * The balancing machinery below mirrors AVLGTree's.         *
+     * ******************************************************** */
+
+    private int height(Node<K, V> node) {
+    	return (node == null) ? -1 : node.height;
+    }
+
+    private int size(Node<K, V> node) {
+    	return (node == null) ? 0 : node.size;
+    }
+
+    private void update(Node<K, V> node) {
+    	node.height = 1+Math.max(height(node.left), height(node.right));
+    	node.size = 1+size(node.left)+size(node.right);
+    }
+
+    /*
+     * Checks every node against the bounds its ancestors put on its key, where null is unbounded, and against the
+     * cached heights and sizes of its children. The nodes wait on an explicit stack, along with their bounds, so that
+     * even a legitimately very deep tree cannot overflow the call stack. Apart from the bounds, the order does not
+     * matter: once every node agrees with its children, every cached height and size is right, by induction from the
+     * leaves.
+     */
+    private boolean verify() {
+    	if(root == null)
+    		return true;
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	Node<K, V>[] stack = (Node<K, V>[]) new Node[INITIAL_PATH_CAPACITY];
+    	Object[] lows = new Object[INITIAL_PATH_CAPACITY], highs = new Object[INITIAL_PATH_CAPACITY]; /*bounds of stack[i], null if unbounded*/
+    	int top = 0;
+    	stack[top++] = root;
+    	while(top > 0) {
+    		Node<K, V> node = stack[--top];
+    		@SuppressWarnings("unchecked")
+    		K lo = (K)lows[top], hi = (K)highs[top];
+    		if((lo != null && node.key.compareTo(lo) <= 0) || (hi != null && node.key.compareTo(hi) >= 0))
+    			return false;
+    		int leftHeight = height(node.left), rightHeight = height(node.right);
+    		if(Math.abs(leftHeight - rightHeight) > maxImbalance || node.height != 1+Math.max(leftHeight, rightHeight)
+    				|| node.size != 1+size(node.left)+size(node.right))
+    			return false;
+    		if(top + 2 > stack.length) {
+    			int length = 2 * stack.length;
+    			stack = Arrays.copyOf(stack, length);
+    			lows = Arrays.copyOf(lows, length);
+    			highs = Arrays.copyOf(highs, length);
+    		}
+    		if(node.right != null) {
+    			stack[top] = node.right;
+    			lows[top] = node.key;
+    			highs[top++] = hi;
+    		}
+    		if(node.left != null) {
+    			stack[top] = node.left;
+    			lows[top] = lo;
+    			highs[top++] = node.key;
+    		}
+    	}
+    	return true;
+    }
+
+    private int balancedHelper(Node<K, V> node) {
+    	return (node == null) ? 0 : height(node.left) - height(node.right);
+    }
+
+    private void push(int depth, Node<K, V> node) {
+    	if(depth == path.length)
+    		path = Arrays.copyOf(path, 2 * path.length);
+    	path[depth] = node;
+    }
+
+    private void relink(Node<K, V> parent, Node<K, V> oldChild, Node<K, V> newChild) {
+    	if(parent.left == oldChild) {
+    		parent.left = newChild;
+    	}else {
+    		parent.right = newChild;
+    	}
+    }
+
+    /*see AVLGTree.retrace(): rebalances path[depth-1..0] bottom-up, stopping early once heights stop changing*/
+    private Node<K, V> retrace(int depth, int delta) {
+    	boolean heightChanged = true;
+    	Node<K, V> node = null;
+    	for(int i = depth-1; i >= 0; i--) {
+    		node = path[i];
+    		if(heightChanged) {
+    			int oldHeight = node.height;
+    			Node<K, V> subtree = balance(node);
+    			if(i > 0 && subtree != node)
+    				relink(path[i-1], node, subtree);
+    			heightChanged = (subtree.height != oldHeight);
+    			node = subtree;
+    		}else {
+    			node.size += delta;
+    		}
+    		path[i] = null;
+    	}
+    	return node;
+    }
+
+    private Node<K, V> lRotate(Node<K, V> node) {
+    	Node<K, V> newRoot = node.right;
+    	node.right = newRoot.left;
+    	newRoot.left = node;
+    	update(node);
+    	update(newRoot);
+    	return newRoot;
+    }
+
+    private Node<K, V> rRotate(Node<K, V> node) {
+    	Node<K, V> newRoot = node.left;
+    	node.left = newRoot.right;
+    	newRoot.right = node;
+    	update(node);
+    	update(newRoot);
+    	return newRoot;
+    }
+
+    private Node<K, V> balance(Node<K, V> node) {
+    	update(node);
+    	int balance = balancedHelper(node);
+    	if(balance > maxImbalance) {
+    		if(balancedHelper(node.left) < 0)
+    			node.left = lRotate(node.left);
+    		return rRotate(node);
+    	}
+    	if(balance < -maxImbalance) {
+    		if(balancedHelper(node.right) > 0)
+    			node.right = rRotate(node.right);
+    		return lRotate(node);
+    	}
+    	return node;
+    }
+}
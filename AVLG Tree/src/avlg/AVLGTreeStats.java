@@ -0,0 +1,174 @@
+package avlg;
+
+import java.util.Arrays;
+
+/**
+ * <p>{@link AVLGTreeStats} gathers the numbers that matter when picking the imbalance parameter G of an
+ * {@link AVLGTree}: how many single and double rotations its updates cost, and how many nodes its searches,
+ * insertions and deletions have to visit. Searches are additionally recorded in a histogram of their path lengths,
+ * since a larger G mostly shows up in the tail of that distribution rather than in its average.</p>
+ *
+ * <p>Statistics are gathered only after {@link AVLGTree#enableStats()} has been called. A tree without statistics
+ * pays a single {@code null} check per operation. The counters are not synchronized: scrape them from the thread
+ * that owns the tree, or after the work is done.</p>
+ *
+ * @see AVLGTree#enableStats()
+ * @see AVLGTree#getStats()
+ */
+public class AVLGTreeStats {
+
+	private long singleRotations;
+	private long doubleRotations;
+	private long searches;
+	private long searchVisits;
+	private long insertions;
+	private long insertionVisits;
+	private long deletions;
+	private long deletionVisits;
+	private long retracedNodes;
+	private long[] searchDepths = new long[32];
+
+	AVLGTreeStats() {
+	}
+
+	/* ************************* RECORDING, CALLED BY AVLGTree ************************* */
+
+	void singleRotation() {
+		singleRotations++;
+	}
+
+	void doubleRotation() {
+		doubleRotations++;
+	}
+
+	void search(int visited) {
+		searches++;
+		searchVisits += visited;
+		if(visited >= searchDepths.length)
+			searchDepths = Arrays.copyOf(searchDepths, Math.max(2 * searchDepths.length, visited + 1));
+		searchDepths[visited]++;
+	}
+
+	void insertion(int visited, int retraced) {
+		insertions++;
+		insertionVisits += visited + retraced;
+		retracedNodes += retraced;
+	}
+
+	void deletion(int visited, int retraced) {
+		deletions++;
+		deletionVisits += visited + retraced;
+		retracedNodes += retraced;
+	}
+
+	/* ************************* SCRAPING ************************* */
+
+	/**
+	 * @return The number of single rotations performed by rebalancing, not counting those that were part of a
+	 * double rotation.
+	 */
+	public long getSingleRotations() {
+		return singleRotations;
+	}
+
+	/**
+	 * @return The number of double (left-right or right-left) rotations performed by rebalancing.
+	 */
+	public long getDoubleRotations() {
+		return doubleRotations;
+	}
+
+	/**
+	 * @return The number of searches recorded.
+	 */
+	public long getSearches() {
+		return searches;
+	}
+
+	/**
+	 * @return The number of insertions recorded.
+	 */
+	public long getInsertions() {
+		return insertions;
+	}
+
+	/**
+	 * @return The number of deletions recorded, including those of keys that were not in the tree.
+	 */
+	public long getDeletions() {
+		return deletions;
+	}
+
+	/**
+	 * @return The average number of nodes visited by a search, or 0 if there were no searches.
+	 */
+	public double getAverageSearchPathLength() {
+		return searches == 0 ? 0 : searchVisits / (double)searches;
+	}
+
+	/**
+	 * @return The average number of nodes visited by an insertion, on its way down and on its way back up,
+	 * or 0 if there were no insertions.
+	 */
+	public double getAverageInsertionVisits() {
+		return insertions == 0 ? 0 : insertionVisits / (double)insertions;
+	}
+
+	/**
+	 * @return The average number of nodes visited by a deletion, on its way down and on its way back up,
+	 * or 0 if there were no deletions.
+	 */
+	public double getAverageDeletionVisits() {
+		return deletions == 0 ? 0 : deletionVisits / (double)deletions;
+	}
+
+	/**
+	 * @return The average number of nodes rebalanced per insertion or deletion, or 0 if there were no updates.
+	 */
+	public double getAverageRetracedNodes() {
+		long updates = insertions + deletions;
+		return updates == 0 ? 0 : retracedNodes / (double)updates;
+	}
+
+	/**
+	 * @return The average number of rotations per insertion or deletion, where a double rotation counts as one,
+	 * or 0 if there were no updates.
+	 */
+	public double getRotationsPerUpdate() {
+		long updates = insertions + deletions;
+		return updates == 0 ? 0 : (singleRotations + doubleRotations) / (double)updates;
+	}
+
+	/**
+	 * Returns the histogram of search path lengths: position d holds the number of searches which visited
+	 * exactly d nodes.
+	 * @return A copy of the histogram, as long as the longest recorded search path (plus one).
+	 */
+	public long[] getSearchDepthHistogram() {
+		int length = searchDepths.length;
+		while(length > 0 && searchDepths[length-1] == 0)
+			length--;
+		return Arrays.copyOf(searchDepths, length);
+	}
+
+	/**
+	 * Zeroes all the counters.
+	 */
+	public void reset() {
+		singleRotations = doubleRotations = 0;
+		searches = searchVisits = 0;
+		insertions = insertionVisits = 0;
+		deletions = deletionVisits = 0;
+		retracedNodes = 0;
+		Arrays.fill(searchDepths, 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("rotations: %d single, %d double (%.3f per update); searches: %d, %.2f nodes on average; "
+						+ "insertions: %d, %.2f nodes on average; deletions: %d, %.2f nodes on average; "
+						+ "%.2f nodes rebalanced per update",
+				singleRotations, doubleRotations, getRotationsPerUpdate(), searches, getAverageSearchPathLength(),
+				insertions, getAverageInsertionVisits(), deletions, getAverageDeletionVisits(), getAverageRetracedNodes());
+	}
+}
@@ -0,0 +1,463 @@
+package avlg;
+
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Arrays;
+
+/**
+ * <p>{@link CompactAVLGTree} is an {@link AVLGTree} with an array-backed node pool. It enforces exactly the same
+ * AVL-G balance condition, with exactly the same rotations, but it has no node objects: a node is an {@code int}
+ * index into a handful of parallel arrays (a "struct of arrays") which hold the keys, the indices of the left and
+ * right children, the heights and the subtree sizes. Rotations only swap indices.</p>
+ *
+ * <p>That removes an object header and two references per key, which adds up for trees of tens of millions of keys,
+ * and, more importantly, leaves the garbage collector with a few large arrays to trace instead of one object per
+ * node. The arrays grow in chunks of {@link #CHUNK_SIZE} nodes, so growing never copies the nodes already stored,
+ * and the slots of deleted nodes are recycled through a free list before any new chunk is allocated.</p>
+ *
+ * <p>Keys are still objects, so a tree of boxed keys still holds a box per key. For {@code int} or {@code long} keys,
+ * see {@link IntAVLGTree} and {@link LongAVLGTree}.</p>
+ *
+ * @see AVLGTree
+ */
+public class CompactAVLGTree<T extends Comparable<T>> {
+
+	/**
+	 * The number of nodes in every chunk of the pool.
+	 */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int NIL = 0; /*slot 0 is a sentinel standing for the empty subtree: height -1, size 0*/
+	private static final int INITIAL_PATH_CAPACITY = 64;
+
+	private Object[][] keys;
+	private int[][] left;
+	private int[][] right; /*for free slots, the next slot of the free list*/
+	private int[][] height;
+	private int[][] size;
+	private int chunks; /*number of chunks allocated so far*/
+	private int used; /*slots [0, used) have been handed out at least once*/
+	private int free = NIL; /*head of the free list of recycled slots*/
+
+	private int root = NIL;
+	private final int maxImbalance;
+	private int[] path = new int[INITIAL_PATH_CAPACITY]; /*reusable root-to-leaf path of the current update*/
+
+    /**
+     * The class constructor provides the tree with the maximum imbalance allowed.
+     * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+     * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+     */
+    public CompactAVLGTree(int maxImbalance) throws InvalidBalanceException {
+    	if(maxImbalance < 1)
+    		throw new InvalidBalanceException(null);
+    	this.maxImbalance = maxImbalance;
+    	reset();
+    }
+
+    /**
+     * Insert key in the tree. Like {@link AVLGTree#insert(Comparable)}, duplicates are not detected.
+     * @param key The key to insert in the tree.
+     */
+    public void insert(T key) {
+    	int leaf = allocate(key);
+    	if(root == NIL) {
+    		root = leaf;
+    		return;
+    	}
+    	int depth = 0;
+    	int curr = root;
+    	while(curr != NIL) {
+    		push(depth++, curr);
+    		curr = (key(curr).compareTo(key) > 0) ? left(curr) : right(curr);
+    	}
+    	int parent = path[depth-1];
+    	if(key(parent).compareTo(key) > 0) {
+    		setLeft(parent, leaf);
+    	}else {
+    		setRight(parent, leaf);
+    	}
+    	root = retrace(depth, 1);
+    }
+
+    /**
+     * Delete the key from the data structure and return it to the caller. The slot of the deleted node is recycled
+     * by a later insertion.
+     * @param key The key to delete from the structure.
+     * @return The key that was removed, or {@code null} if the key was not found.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T delete(T key) throws EmptyTreeException {
+    	if(root == NIL)
+    		throw new EmptyTreeException(null);
+    	int depth = 0;
+    	int curr = root;
+    	while(curr != NIL) {
+    		int cmp = key(curr).compareTo(key);
+    		if(cmp == 0)
+    			break;
+    		push(depth++, curr);
+    		curr = (cmp > 0) ? left(curr) : right(curr);
+    	}
+    	if(curr == NIL)
+    		return null;
+    	T removed = key(curr);
+    	int target = curr;
+    	if(left(curr) != NIL && right(curr) != NIL) {
+    		/*two children: the in-order successor's key moves up, and the successor node is unlinked instead*/
+    		push(depth++, curr);
+    		target = right(curr);
+    		while(left(target) != NIL) {
+    			push(depth++, target);
+    			target = left(target);
+    		}
+    		keys[curr >>> CHUNK_BITS][curr & CHUNK_MASK] = key(target);
+    	}
+    	int child = (left(target) != NIL) ? left(target) : right(target);
+    	if(depth == 0) {
+    		root = child;
+    	}else {
+    		relink(path[depth-1], target, child);
+    		root = retrace(depth, -1);
+    	}
+    	release(target);
+    	return removed;
+    }
+
+    /**
+     * Search for key in the tree. Return a reference to it if it's in there, or {@code null} otherwise.
+     * @param key The key to search for.
+     * @return key if key is in the tree, or {@code null} otherwise.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T search(T key) throws EmptyTreeException {
+    	if(root == NIL)
+    		throw new EmptyTreeException(null);
+    	int curr = root;
+    	while(curr != NIL) {
+    		int cmp = key.compareTo(key(curr));
+    		if(cmp == 0)
+    			return key;
+    		curr = (cmp < 0) ? left(curr) : right(curr);
+    	}
+    	return null;
+    }
+
+    /**
+     * Retrieves the maximum imbalance parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter.
+     */
+    public int getMaxImbalance() {
+    	return maxImbalance;
+    }
+
+    /**
+     * Return the height of the tree, which is -1 for an empty tree and 0 for a stub.
+     * @return The height of the tree.
+     */
+    public int getHeight() {
+    	return height(root);
+    }
+
+    /**
+     * Query the tree for emptiness.
+     * @return {@code true} if the tree is empty, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+    	return root == NIL;
+    }
+
+    /**
+     * Return the key at the tree's root node.
+     * @return The key at the tree's root node.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public T getRoot() throws EmptyTreeException {
+    	if(root == NIL)
+    		throw new EmptyTreeException("getRoot");
+    	return key(root);
+    }
+
+    /**
+     * Establishes whether every node of the tree satisfies the AVL-G condition, in a single pass over
+     * the whole tree, which also checks the cached heights and sizes.
+     * @return {@code true} if the tree satisfies the balance requirements of an AVLG tree, {@code false} otherwise.
+     */
+    public boolean isAVLGBalanced() {
+    	return verify();
+    }
+
+    /**
+     * Empties the tree of all its elements, and hands its whole pool back to the garbage collector.
+     */
+    public void clear() {
+    	reset();
+    }
+
+    /**
+     * Return the number of elements in the tree.
+     * @return The number of elements in the tree.
+     */
+    public int getCount() {
+    	return size(root);
+    }
+
+    /**
+     * Return the number of node slots which the pool currently has room for, used or free. The pool never shrinks,
+     * except through {@link #clear()}.
+     * @return The capacity of the node pool.
+     */
+    public int getCapacity() {
+    	return chunks * CHUNK_SIZE - 1;
+    }
+
+    /**
+     * Return the number of keys in the tree that are strictly smaller than key. Runs in O(log n) time.
+     * @param key The key whose rank we want.
+     * @return The number of keys in the tree which are strictly smaller than key.
+     */
+    public int rank(T key) {
+    	int count = 0;
+    	int curr = root;
+    	while(curr != NIL) {
+    		if(key.compareTo(key(curr)) > 0) {
+    			count += size(left(curr)) + 1;
+    			curr = right(curr);
+    		}else {
+    			curr = left(curr);
+    		}
+    	}
+    	return count;
+    }
+
+    /**
+     * Return the i-th smallest key in the tree. Runs in O(log n) time.
+     * @param i The 0-based index of the key to retrieve.
+     * @return The i-th smallest key in the tree.
+     * @throws IndexOutOfBoundsException if i is negative or not smaller than {@link #getCount()}.
+     */
+    public T select(int i) {
+    	if(i < 0 || i >= getCount())
+    		throw new IndexOutOfBoundsException("select: index " + i + " out of bounds for a tree of " + getCount() + " keys.");
+    	int curr = root;
+    	while(true) {
+    		int leftSize = size(left(curr));
+    		if(i < leftSize) {
+    			curr = left(curr);
+    		}else if(i > leftSize) {
+    			i -= leftSize + 1;
+    			curr = right(curr);
+    		}else {
+    			return key(curr);
+    		}
+    	}
+    }
+
+    /* ******************************************************** *
+     * The node pool.                                           *
+     * ******************************************************** */
+
+    /*drops every chunk and starts over with one, holding just the sentinel*/
+    private void reset() {
+    	keys = new Object[1][];
+    	left = new int[1][];
+    	right = new int[1][];
+    	height = new int[1][];
+    	size = new int[1][];
+    	chunks = 0;
+    	addChunk();
+    	height[0][NIL] = -1;
+    	used = 1;
+    	free = NIL;
+    	root = NIL;
+    }
+
+    /*allocates one more chunk; the outer arrays are copied, but the chunks they point to never move*/
+    private void addChunk() {
+    	if(chunks == keys.length) {
+    		int capacity = 2 * chunks;
+    		keys = Arrays.copyOf(keys, capacity);
+    		left = Arrays.copyOf(left, capacity);
+    		right = Arrays.copyOf(right, capacity);
+    		height = Arrays.copyOf(height, capacity);
+    		size = Arrays.copyOf(size, capacity);
+    	}
+    	keys[chunks] = new Object[CHUNK_SIZE];
+    	left[chunks] = new int[CHUNK_SIZE];
+    	right[chunks] = new int[CHUNK_SIZE];
+    	height[chunks] = new int[CHUNK_SIZE];
+    	size[chunks] = new int[CHUNK_SIZE];
+    	chunks++;
+    }
+
+    /*a fresh stub holding key, in a recycled slot if there is one*/
+    private int allocate(T key) {
+    	int node;
+    	if(free != NIL) {
+    		node = free;
+    		free = right(node);
+    	}else {
+    		if(used == chunks * CHUNK_SIZE)
+    			addChunk();
+    		node = used++;
+    	}
+    	int chunk = node >>> CHUNK_BITS, offset = node & CHUNK_MASK;
+    	keys[chunk][offset] = key;
+    	left[chunk][offset] = NIL;
+    	right[chunk][offset] = NIL;
+    	height[chunk][offset] = 0;
+    	size[chunk][offset] = 1;
+    	return node;
+    }
+
+    /*puts the slot of an unlinked node on the free list, dropping its key so that it can be collected*/
+    private void release(int node) {
+    	int chunk = node >>> CHUNK_BITS, offset = node & CHUNK_MASK;
+    	keys[chunk][offset] = null;
+    	right[chunk][offset] = free;
+    	free = node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T key(int node) {
+    	return (T) keys[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    private int left(int node) {
+    	return left[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    private int right(int node) {
+    	return right[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    private int height(int node) {
+    	return height[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    private int size(int node) {
+    	return size[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    private void setLeft(int node, int child) {
+    	left[node >>> CHUNK_BITS][node & CHUNK_MASK] = child;
+    }
+
+    private void setRight(int node, int child) {
+    	right[node >>> CHUNK_BITS][node & CHUNK_MASK] = child;
+    }
+
+    /* ******************************************************** *
+     * The balancing machinery below mirrors AVLGTree's, with    *
+     * indices in place of references.                           *
+     * ******************************************************** */
+
+    private void update(int node) {
+    	int l = left(node), r = right(node);
+    	int chunk = node >>> CHUNK_BITS, offset = node & CHUNK_MASK;
+    	height[chunk][offset] = 1+Math.max(height(l), height(r));
+    	size[chunk][offset] = 1+size(l)+size(r);
+    }
+
+    /*
+     * Checks every node against the cached heights and sizes of its children, with an explicit stack of slots so that
+     * even a legitimately very deep tree cannot overflow the call stack. The order does not matter: once every node
+     * agrees with its children, every cached height and size is right, by induction from the leaves.
+     */
+    private boolean verify() {
+    	if(root == NIL)
+    		return true;
+    	int[] stack = new int[INITIAL_PATH_CAPACITY];
+    	int top = 0;
+    	stack[top++] = root;
+    	while(top > 0) {
+    		int node = stack[--top], leftChild = left(node), rightChild = right(node);
+    		int leftHeight = height(leftChild), rightHeight = height(rightChild);
+    		if(Math.abs(leftHeight - rightHeight) > maxImbalance || height(node) != 1+Math.max(leftHeight, rightHeight)
+    				|| size(node) != 1+size(leftChild)+size(rightChild))
+    			return false;
+    		if(top + 2 > stack.length)
+    			stack = Arrays.copyOf(stack, 2 * stack.length);
+    		if(rightChild != NIL)
+    			stack[top++] = rightChild;
+    		if(leftChild != NIL)
+    			stack[top++] = leftChild;
+    	}
+    	return true;
+    }
+
+    private int balancedHelper(int node) {
+    	return (node == NIL) ? 0 : height(left(node)) - height(right(node));
+    }
+
+    private void push(int depth, int node) {
+    	if(depth == path.length)
+    		path = Arrays.copyOf(path, 2 * path.length);
+    	path[depth] = node;
+    }
+
+    private void relink(int parent, int oldChild, int newChild) {
+    	if(left(parent) == oldChild) {
+    		setLeft(parent, newChild);
+    	}else {
+    		setRight(parent, newChild);
+    	}
+    }
+
+    /*see AVLGTree.retrace(): rebalances path[depth-1..0] bottom-up, stopping early once heights stop changing*/
+    private int retrace(int depth, int delta) {
+    	boolean heightChanged = true;
+    	int node = NIL;
+    	for(int i = depth-1; i >= 0; i--) {
+    		node = path[i];
+    		if(heightChanged) {
+    			int oldHeight = height(node);
+    			int subtree = balance(node);
+    			if(i > 0 && subtree != node)
+    				relink(path[i-1], node, subtree);
+    			heightChanged = (height(subtree) != oldHeight);
+    			node = subtree;
+    		}else {
+    			size[node >>> CHUNK_BITS][node & CHUNK_MASK] += delta;
+    		}
+    	}
+    	return node;
+    }
+
+    private int lRotate(int node) {
+    	int newRoot = right(node);
+    	setRight(node, left(newRoot));
+    	setLeft(newRoot, node);
+    	update(node);
+    	update(newRoot);
+    	return newRoot;
+    }
+
+    private int rRotate(int node) {
+    	int newRoot = left(node);
+    	setLeft(node, right(newRoot));
+    	setRight(newRoot, node);
+    	update(node);
+    	update(newRoot);
+    	return newRoot;
+    }
+
+    private int balance(int node) {
+    	update(node);
+    	int balance = balancedHelper(node);
+    	if(balance > maxImbalance) {
+    		if(balancedHelper(left(node)) < 0)
+    			setLeft(node, lRotate(left(node)));
+    		return rRotate(node);
+    	}
+    	if(balance < -maxImbalance) {
+    		if(balancedHelper(right(node)) > 0)
+    			setRight(node, rRotate(right(node)));
+    		return lRotate(node);
+    	}
+    	return node;
+    }
+}
@@ -0,0 +1,262 @@
+package avlg;
+
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * <p>{@link ConcurrentAVLGTree} is a thread-safe {@link AVLGTree}, with the same maximum imbalance contract. It is
+ * meant for trees which are shared by many threads that mostly <b>read</b>, where wrapping every call in a global
+ * {@code synchronized} block would serialize the readers for no reason.</p>
+ *
+ * <p>Readers do not lock at all on their fast path: {@link #search(Comparable)} and the other cheap queries walk the
+ * tree under an <em>optimistic</em> stamp of a {@link StampedLock}, which is nothing but a version number, and
+ * validate the stamp when they are done. If a writer got in the way, the read is retried, and after
+ * {@link #OPTIMISTIC_ATTEMPTS} failed attempts the reader falls back to the (shared) read lock, so readers can never
+ * starve. Queries that are more involved than a single descent, like {@link #rank(Comparable)} or
+ * {@link #floor(Comparable)}, always run under the shared read lock.</p>
+ *
+ * <p>Writers are serialized by a single, global write lock, so writes do <b>not</b> scale with the number of
+ * threads: two updates on opposite ends of the tree still wait for each other. Locking only the path of an update,
+ * hand over hand, would let such updates proceed side by side, but the rotations of {@link AVLGTree} may reach
+ * all the way up to the root, and it relinks nodes in place, so that would take a rebalancing scheme built for it.
+ * This class deliberately leaves that out and only makes the readers, the ones it is meant for, lock-free.</p>
+ *
+ * @see AVLGTree
+ * @see StampedLock
+ */
+public class ConcurrentAVLGTree<T extends Comparable<T>> {
+
+	/**
+	 * The number of optimistic attempts that a reader makes before falling back to the read lock.
+	 */
+	public static final int OPTIMISTIC_ATTEMPTS = 3;
+
+	private final AVLGTree<T> tree;
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * The class constructor provides the tree with the maximum imbalance allowed.
+	 * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+	 * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+	 */
+	public ConcurrentAVLGTree(int maxImbalance) throws InvalidBalanceException {
+		tree = new AVLGTree<>(maxImbalance);
+	}
+
+	/**
+	 * Insert key in the tree. Blocks other writers, but not readers.
+	 * @param key The key to insert in the tree.
+	 * @see AVLGTree#insert(Comparable)
+	 */
+	public void insert(T key) {
+		long stamp = lock.writeLock();
+		try {
+			tree.insert(key);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Delete the key from the data structure and return it to the caller. Blocks other writers, but not readers.
+	 * @param key The key to delete from the structure.
+	 * @return The key that was removed, or {@code null} if the key was not found.
+	 * @throws EmptyTreeException if the tree is empty.
+	 * @see AVLGTree#delete(Comparable)
+	 */
+	public T delete(T key) throws EmptyTreeException {
+		long stamp = lock.writeLock();
+		try {
+			return tree.delete(key);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Empties the tree of all its elements.
+	 */
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			tree.clear();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * <p>Search for key in the tree. Return a reference to it if it's in there, or {@code null} otherwise. This
+	 * method does not lock, unless it keeps losing races against writers.</p>
+	 * @param key The key to search for.
+	 * @return key if key is in the tree, or {@code null} otherwise.
+	 * @throws EmptyTreeException if the tree is empty.
+	 */
+	public T search(T key) throws EmptyTreeException {
+		for(int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			long stamp = lock.tryOptimisticRead();
+			if(stamp == 0)
+				continue; // A writer holds the lock right now.
+			int height = tree.getHeight(); // A consistent tree has no longer paths, so a racing walk stops within it.
+			boolean empty = height < 0;
+			Object found = empty ? null : tree.probe(key, height + 1);
+			if(lock.validate(stamp)) {
+				if(empty)
+					throw new EmptyTreeException(null);
+				return (found == null) ? null : key;
+			}
+		}
+		long stamp = lock.readLock();
+		try {
+			return tree.search(key);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Takes a point-in-time, read-only snapshot of the tree in O(1) time. Writers are only held up for the
+	 * instant it takes to grab the snapshot; from then on, the snapshot can be scanned without any locking
+	 * (for example by a background reporting thread) while writers keep updating this tree.
+	 * @return A read-only {@link AVLGTree} holding exactly the keys which are currently in this.
+	 * @see AVLGTree#snapshot()
+	 */
+	public AVLGTree<T> snapshot() {
+		long stamp = lock.writeLock();
+		try {
+			return tree.snapshot();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Retrieves the maximum imbalance parameter.
+	 * @return The maximum imbalance parameter provided as a constructor parameter.
+	 */
+	public int getMaxImbalance() {
+		return readOptimistically(tree::getMaxImbalance);
+	}
+
+	/**
+	 * Return the height of the tree, which is -1 for an empty tree.
+	 * @return The height of the tree.
+	 * @see AVLGTree#getHeight()
+	 */
+	public int getHeight() {
+		return readOptimistically(tree::getHeight);
+	}
+
+	/**
+	 * Return the number of elements in the tree.
+	 * @return The number of elements in the tree.
+	 */
+	public int getCount() {
+		return readOptimistically(tree::getCount);
+	}
+
+	/**
+	 * Query the tree for emptiness.
+	 * @return {@code true} if the tree is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return readOptimistically(tree::isEmpty);
+	}
+
+	/**
+	 * Return the number of keys in the tree which are strictly smaller than key.
+	 * @param key The key whose rank we want.
+	 * @return The rank of key.
+	 * @see AVLGTree#rank(Comparable)
+	 */
+	public int rank(T key) {
+		long stamp = lock.readLock();
+		try {
+			return tree.rank(key);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Return the i-th smallest key in the tree.
+	 * @param i The 0-based index of the key to retrieve.
+	 * @return The i-th smallest key in the tree.
+	 * @throws IndexOutOfBoundsException if i is negative or not smaller than {@link #getCount()}.
+	 * @see AVLGTree#select(int)
+	 */
+	public T select(int i) {
+		long stamp = lock.readLock();
+		try {
+			return tree.select(i);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Return the largest key in the tree which is smaller than or equal to key.
+	 * @param key The key to compare against.
+	 * @return The largest key &lt;= key, or {@code null} if there is no such key.
+	 * @throws EmptyTreeException if the tree is empty.
+	 * @see AVLGTree#floor(Comparable)
+	 */
+	public T floor(T key) throws EmptyTreeException {
+		long stamp = lock.readLock();
+		try {
+			return tree.floor(key);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Return the smallest key in the tree which is larger than or equal to key.
+	 * @param key The key to compare against.
+	 * @return The smallest key &gt;= key, or {@code null} if there is no such key.
+	 * @throws EmptyTreeException if the tree is empty.
+	 * @see AVLGTree#ceiling(Comparable)
+	 */
+	public T ceiling(T key) throws EmptyTreeException {
+		long stamp = lock.readLock();
+		try {
+			return tree.ceiling(key);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Establishes whether the tree globally satisfies the AVL-G condition.
+	 * @return {@code true} if the tree satisfies the balance requirements of an AVLG tree, {@code false} otherwise.
+	 */
+	public boolean isAVLGBalanced() {
+		long stamp = lock.readLock();
+		try {
+			return tree.isAVLGBalanced();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/*reads a single cached field, retrying optimistically and falling back to the read lock*/
+	private <R> R readOptimistically(Supplier<R> reader) {
+		for(int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			long stamp = lock.tryOptimisticRead();
+			if(stamp == 0)
+				continue;
+			R result = reader.get();
+			if(lock.validate(stamp))
+				return result;
+		}
+		long stamp = lock.readLock();
+		try {
+			return reader.get();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+}
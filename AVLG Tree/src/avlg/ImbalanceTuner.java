@@ -0,0 +1,63 @@
+package avlg;
+
+/**
+ * <p>{@link ImbalanceTuner} picks the imbalance parameter of an adaptive {@link AVLGTree} from its recent
+ * read/write mix. Operations are counted in windows of {@link #WINDOW} calls. At the end of every window, the share
+ * of updates in it is folded into an exponentially decaying average (so that a single odd window does not flip the
+ * tree back and forth), and the average is mapped linearly onto [minImbalance, maxImbalance]: a tree that only
+ * gets searched is driven to the tight bound, which makes searches as short as possible, while a tree that only
+ * gets updated is driven to the lax bound, which saves rotations.</p>
+ *
+ * @see AVLGTree#enableAdaptiveImbalance(int, int)
+ */
+class ImbalanceTuner {
+
+	/**
+	 * The number of operations between two decisions.
+	 */
+	static final int WINDOW = 1024;
+
+	/**
+	 * The weight of the latest window in the decaying average of the update share.
+	 */
+	private static final double DECAY = 0.5;
+
+	private final int minImbalance;
+	private final int maxImbalance;
+	private int reads;
+	private int writes;
+	private double writeShare;
+
+	ImbalanceTuner(int minImbalance, int maxImbalance, int currentImbalance) {
+		this.minImbalance = minImbalance;
+		this.maxImbalance = maxImbalance;
+		/* Start from the share that corresponds to the tree's current parameter, so that enabling does not jump. */
+		int clamped = Math.max(minImbalance, Math.min(maxImbalance, currentImbalance));
+		writeShare = (maxImbalance == minImbalance) ? 0 : (clamped - minImbalance) / (double)(maxImbalance - minImbalance);
+	}
+
+	/**
+	 * Counts one operation.
+	 * @param write {@code true} for an insertion or a deletion, {@code false} for a search.
+	 * @return The imbalance parameter that the tree should move to, or 0 if the current window is not over yet.
+	 */
+	int record(boolean write) {
+		if(write)
+			writes++;
+		else
+			reads++;
+		if(reads + writes < WINDOW)
+			return 0;
+		writeShare = (1 - DECAY) * writeShare + DECAY * (writes / (double)(reads + writes));
+		reads = writes = 0;
+		return minImbalance + (int)Math.round((maxImbalance - minImbalance) * writeShare);
+	}
+
+	int getMinImbalance() {
+		return minImbalance;
+	}
+
+	int getMaxImbalance() {
+		return maxImbalance;
+	}
+}
@@ -0,0 +1,356 @@
+package avlg;
+
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Arrays;
+
+/**
+ * <p>{@link IntAVLGTree} is an {@link AVLGTree} specialized for primitive {@code int} keys. It enforces exactly the
+ * same AVL-G balance condition, with exactly the same rotations, but its nodes hold raw {@code int}s instead of
+ * {@link Integer} boxes, and it compares keys with plain {@code <} and {@code >} instead of calling
+ * {@link Comparable#compareTo(Object)}. That saves an object (and a pointer chase) per key, and a virtual call per
+ * level of every descent.</p>
+ *
+ * <p>Since a primitive cannot be {@code null}, {@link #search(int)} and {@link #delete(int)} return whether the key
+ * was found instead of the key itself.</p>
+ *
+ * @see AVLGTree
+ * @see LongAVLGTree
+ */
+public class IntAVLGTree {
+
+	private static class Node {
+		private int key;
+		private Node left;
+		private Node right;
+		private int height; /* cached: a stub has a height of 0 */
+		private int size = 1; /* cached: number of keys in the subtree rooted here */
+
+		private Node(int key) {
+			this.key = key;
+		}
+	}
+
+	private static final int INITIAL_PATH_CAPACITY = 64;
+
+	private Node root;
+	private final int maxImbalance;
+	private Node[] path = new Node[INITIAL_PATH_CAPACITY]; /*reusable root-to-leaf path of the current update*/
+
+    /**
+     * The class constructor provides the tree with the maximum imbalance allowed.
+     * @param maxImbalance The maximum imbalance allowed by the AVL-G Tree.
+     * @throws InvalidBalanceException if maxImbalance is a value smaller than 1.
+     */
+    public IntAVLGTree(int maxImbalance) throws InvalidBalanceException {
+    	if(maxImbalance < 1)
+    		throw new InvalidBalanceException(null);
+    	this.maxImbalance = maxImbalance;
+    }
+
+    /**
+     * Insert key in the tree. Like {@link AVLGTree#insert(Comparable)}, duplicates are not detected.
+     * @param key The key to insert in the tree.
+     */
+    public void insert(int key) {
+    	if(root == null) {
+    		root = new Node(key);
+    		return;
+    	}
+    	int depth = 0;
+    	Node curr = root;
+    	while(curr != null) {
+    		push(depth++, curr);
+    		curr = (key < curr.key) ? curr.left : curr.right;
+    	}
+    	Node parent = path[depth-1];
+    	if(key < parent.key) {
+    		parent.left = new Node(key);
+    	}else {
+    		parent.right = new Node(key);
+    	}
+    	root = retrace(depth, 1);
+    }
+
+    /**
+     * Delete the key from the tree.
+     * @param key The key to delete from the tree.
+     * @return {@code true} if the key was found and removed, {@code false} otherwise.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public boolean delete(int key) throws EmptyTreeException {
+    	if(root == null)
+    		throw new EmptyTreeException(null);
+    	int depth = 0;
+    	Node curr = root;
+    	while(curr != null && curr.key != key) {
+    		push(depth++, curr);
+    		curr = (key < curr.key) ? curr.left : curr.right;
+    	}
+    	if(curr == null) {
+    		Arrays.fill(path, 0, depth, null);
+    		return false;
+    	}
+    	Node target = curr;
+    	if(curr.left != null && curr.right != null) {
+    		/*two children: the in-order successor's key moves up, and the successor node is unlinked instead*/
+    		push(depth++, curr);
+    		target = curr.right;
+    		while(target.left != null) {
+    			push(depth++, target);
+    			target = target.left;
+    		}
+    		curr.key = target.key;
+    	}
+    	Node child = (target.left != null) ? target.left : target.right;
+    	if(depth == 0) {
+    		root = child;
+    	}else {
+    		relink(path[depth-1], target, child);
+    		root = retrace(depth, -1);
+    	}
+    	return true;
+    }
+
+    /**
+     * Search for key in the tree.
+     * @param key The key to search for.
+     * @return {@code true} if key is in the tree, {@code false} otherwise.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public boolean search(int key) throws EmptyTreeException {
+    	if(root == null)
+    		throw new EmptyTreeException(null);
+    	Node curr = root;
+    	while(curr != null) {
+    		if(key < curr.key) {
+    			curr = curr.left;
+    		}else if(key > curr.key) {
+    			curr = curr.right;
+    		}else {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    /**
+     * Retrieves the maximum imbalance parameter.
+     * @return The maximum imbalance parameter provided as a constructor parameter.
+     */
+    public int getMaxImbalance() {
+    	return maxImbalance;
+    }
+
+    /**
+     * Return the height of the tree, which is -1 for an empty tree and 0 for a stub.
+     * @return The height of the tree.
+     */
+    public int getHeight() {
+    	return height(root);
+    }
+
+    /**
+     * Query the tree for emptiness.
+     * @return {@code true} if the tree is empty, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+    	return root == null;
+    }
+
+    /**
+     * Return the key at the tree's root node.
+     * @return The key at the tree's root node.
+     * @throws EmptyTreeException if the tree is empty.
+     */
+    public int getRoot() throws EmptyTreeException {
+    	if(root == null)
+    		throw new EmptyTreeException("getRoot");
+    	return root.key;
+    }
+
+    /**
+     * Establishes whether every node of the tree satisfies the AVL-G condition, in a single pass over
+     * the whole tree, which also checks the cached heights and sizes.
+     * @return {@code true} if the tree satisfies the balance requirements of an AVLG tree, {@code false} otherwise.
+     */
+    public boolean isAVLGBalanced() {
+    	return verify();
+    }
+
+    /**
+     * Empties the tree of all its elements.
+     */
+    public void clear() {
+    	root = null;
+    }
+
+    /**
+     * Return the number of elements in the tree.
+     * @return The number of elements in the tree.
+     */
+    public int getCount() {
+    	return size(root);
+    }
+
+    /**
+     * Return the number of keys in the tree that are strictly smaller than key. Runs in O(log n) time.
+     * @param key The key whose rank we want.
+     * @return The number of keys in the tree which are strictly smaller than key.
+     */
+    public int rank(int key) {
+    	int count = 0;
+    	Node curr = root;
+    	while(curr != null) {
+    		if(key > curr.key) {
+    			count += size(curr.left) + 1;
+    			curr = curr.right;
+    		}else {
+    			curr = curr.left;
+    		}
+    	}
+    	return count;
+    }
+
+    /**
+     * Return the i-th smallest key in the tree. Runs in O(log n) time.
+     * @param i The 0-based index of the key to retrieve.
+     * @return The i-th smallest key in the tree.
+     * @throws IndexOutOfBoundsException if i is negative or not smaller than {@link #getCount()}.
+     */
+    public int select(int i) {
+    	if(i < 0 || i >= getCount())
+    		throw new IndexOutOfBoundsException("select: index " + i + " out of bounds for a tree of " + getCount() + " keys.");
+    	Node curr = root;
+    	while(true) {
+    		int leftSize = size(curr.left);
+    		if(i < leftSize) {
+    			curr = curr.left;
+    		}else if(i > leftSize) {
+    			i -= leftSize + 1;
+    			curr = curr.right;
+    		}else {
+    			return curr.key;
+    		}
+    	}
+    }
+
+    /* ******************************************************** *
+     * The balancing machinery below mirrors AVLGTree's, minus   *
+     * snapshots, statistics and adaptivity.                     *
+     * ******************************************************** */
+
+    private static int height(Node node) {
+    	return (node == null) ? -1 : node.height;
+    }
+
+    private static int size(Node node) {
+    	return (node == null) ? 0 : node.size;
+    }
+
+    private static void update(Node node) {
+    	node.height = 1+Math.max(height(node.left), height(node.right));
+    	node.size = 1+size(node.left)+size(node.right);
+    }
+
+    /*
+     * Checks every node against the cached heights and sizes of its children, with an explicit stack so that even a
+     * legitimately very deep tree cannot overflow the call stack. The order does not matter: once every node agrees
+     * with its children, every cached height and size is right, by induction from the leaves.
+     */
+    private boolean verify() {
+    	if(root == null)
+    		return true;
+    	Node[] stack = new Node[INITIAL_PATH_CAPACITY];
+    	int top = 0;
+    	stack[top++] = root;
+    	while(top > 0) {
+    		Node node = stack[--top];
+    		int leftHeight = height(node.left), rightHeight = height(node.right);
+    		if(Math.abs(leftHeight - rightHeight) > maxImbalance || node.height != 1+Math.max(leftHeight, rightHeight)
+    				|| node.size != 1+size(node.left)+size(node.right))
+    			return false;
+    		if(top + 2 > stack.length)
+    			stack = Arrays.copyOf(stack, 2 * stack.length);
+    		if(node.right != null)
+    			stack[top++] = node.right;
+    		if(node.left != null)
+    			stack[top++] = node.left;
+    	}
+    	return true;
+    }
+
+    private static int balancedHelper(Node node) {
+    	return (node == null) ? 0 : height(node.left) - height(node.right);
+    }
+
+    private void push(int depth, Node node) {
+    	if(depth == path.length)
+    		path = Arrays.copyOf(path, 2 * path.length);
+    	path[depth] = node;
+    }
+
+    private static void relink(Node parent, Node oldChild, Node newChild) {
+    	if(parent.left == oldChild) {
+    		parent.left = newChild;
+    	}else {
+    		parent.right = newChild;
+    	}
+    }
+
+    /*see AVLGTree.retrace(): rebalances path[depth-1..0] bottom-up, stopping early once heights stop changing*/
+    private Node retrace(int depth, int delta) {
+    	boolean heightChanged = true;
+    	Node node = null;
+    	for(int i = depth-1; i >= 0; i--) {
+    		node = path[i];
+    		if(heightChanged) {
+    			int oldHeight = node.height;
+    			Node subtree = balance(node);
+    			if(i > 0 && subtree != node)
+    				relink(path[i-1], node, subtree);
+    			heightChanged = (subtree.height != oldHeight);
+    			node = subtree;
+    		}else {
+    			node.size += delta;
+    		}
+    		path[i] = null;
+    	}
+    	return node;
+    }
+
+    private static Node lRotate(Node node) {
+    	Node newRoot = node.right;
+    	node.right = newRoot.left;
+    	newRoot.left = node;
+    	update(node);
+    	update(newRoot);
+    	return newRoot;
+    }
+
+    private static Node rRotate(Node node) {
+    	Node newRoot = node.left;
+    	node.left = newRoot.right;
+    	newRoot.right = node;
+    	update(node);
+    	update(newRoot);
+    	return newRoot;
+    }
+
+    private Node balance(Node node) {
+    	update(node);
+    	int balance = balancedHelper(node);
+    	if(balance > maxImbalance) {
+    		if(balancedHelper(node.left) < 0)
+    			node.left = lRotate(node.left);
+    		return rRotate(node);
+    	}
+    	if(balance < -maxImbalance) {
+    		if(balancedHelper(node.right) > 0)
+    			node.right = rRotate(node.right);
+    		return lRotate(node);
+    	}
+    	return node;
+    }
+}
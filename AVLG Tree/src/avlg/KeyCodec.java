@@ -0,0 +1,95 @@
+package avlg;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>{@link KeyCodec} turns the keys of an {@link AVLGTree} into bytes and back, for
+ * {@link AVLGTree#writeTo(java.nio.file.Path, KeyCodec)} and {@link AVLGTree#readFrom(java.nio.file.Path, KeyCodec)}.
+ * Keys are written to a {@link DataOutput}, so that a tree can be streamed to disk, and read back from a
+ * {@link ByteBuffer}, so that a snapshot can be decoded straight out of a memory-mapped file. Both ends use the
+ * big-endian byte order of {@link DataOutput}.</p>
+ *
+ * <p>{@link #INTEGER}, {@link #LONG} and {@link #STRING} cover the common key types; other types need a codec of
+ * their own, whose {@link #decode(ByteBuffer)} reads exactly the bytes that {@link #encode(Comparable, DataOutput)}
+ * wrote.</p>
+ *
+ * @param <T> The type of the keys.
+ * @see AVLGTree#writeTo(java.nio.file.Path, KeyCodec)
+ */
+public interface KeyCodec<T extends Comparable<T>> {
+
+	/**
+	 * Four bytes per key.
+	 */
+	KeyCodec<Integer> INTEGER = new KeyCodec<>() {
+		@Override
+		public void encode(Integer key, DataOutput out) throws IOException {
+			out.writeInt(key);
+		}
+
+		@Override
+		public Integer decode(ByteBuffer in) {
+			return in.getInt();
+		}
+	};
+
+	/**
+	 * Eight bytes per key.
+	 */
+	KeyCodec<Long> LONG = new KeyCodec<>() {
+		@Override
+		public void encode(Long key, DataOutput out) throws IOException {
+			out.writeLong(key);
+		}
+
+		@Override
+		public Long decode(ByteBuffer in) {
+			return in.getLong();
+		}
+	};
+
+	/**
+	 * The length of the key's UTF-8 encoding, on four bytes, followed by that encoding.
+	 */
+	KeyCodec<String> STRING = new KeyCodec<>() {
+		@Override
+		public void encode(String key, DataOutput out) throws IOException {
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		@Override
+		public String decode(ByteBuffer in) {
+			int length = in.getInt();
+			if(length < 0)
+				throw new IllegalArgumentException("STRING: invalid key length " + length + ".");
+			if(length > in.remaining())
+				throw new BufferUnderflowException(); // Checked before allocating, so that a corrupt length costs nothing.
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+
+	/**
+	 * Writes key to out.
+	 * @param key The key to write.
+	 * @param out Where to write it.
+	 * @throws IOException if out cannot be written to.
+	 */
+	void encode(T key, DataOutput out) throws IOException;
+
+	/**
+	 * Reads the next key from in, advancing its position past the key.
+	 * @param in The bytes to read from.
+	 * @return The key.
+	 * @throws BufferUnderflowException if in ends before the key does.
+	 * @throws IllegalArgumentException if the bytes cannot be the encoding of a key.
+	 */
+	T decode(ByteBuffer in);
+}
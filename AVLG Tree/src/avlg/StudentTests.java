@@ -4,7 +4,18 @@ import org.junit.Test;
 import avlg.exceptions.EmptyTreeException;
 import avlg.exceptions.InvalidBalanceException;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -190,4 +201,804 @@ public class StudentTests {
     	tree.delete(2);
     	assertEquals("should be 3", Integer.valueOf(3), tree.getRoot());
     }
+
+    /* Nodes cache their heights, so the height reported after a long run of sorted insertions (which would otherwise
+     * produce a linked list) and deletions must match the logarithmic bound of an AVL-1 tree.
+     */
+    @Test
+    public void testHeightStaysLogarithmic() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(1);
+        for(int i = 0; i < NUMS; i++)
+            tree.insert(i);
+        int bound = (int)(1.45 * (Math.log(NUMS + 2) / Math.log(2)));
+        assertTrue("After inserting " + NUMS + " sorted keys in an AVL-1 tree, its height was " + tree.getHeight() + ".",
+                tree.getHeight() <= bound);
+        for(int i = 0; i < NUMS; i += 2)
+            tree.delete(i);
+        assertTrue("After deleting every other key, the AVL-1 tree was no longer balanced.", tree.isAVLGBalanced());
+        assertTrue("After deleting every other key, the AVL-1 tree's height was " + tree.getHeight() + ".",
+                tree.getHeight() <= bound);
+    }
+
+    /* Subtrees cache their sizes, so getCount(), rank(), select() and countInRange() should all agree with
+     * a sorted copy of the keys, even after a mix of insertions and deletions.
+     */
+    @Test
+    public void testOrderStatistics() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(2);
+        for(int i = 0; i < NUMS; i++)
+            tree.insert(2 * i); // Only even keys.
+        for(int i = 0; i < NUMS; i += 3)
+            tree.delete(2 * i);
+        List<Integer> sorted = new ArrayList<>();
+        for(int i = 0; i < NUMS; i++)
+            if(i % 3 != 0)
+                sorted.add(2 * i);
+        assertEquals("The count of the tree was not the expected one.", sorted.size(), tree.getCount());
+        for(int i = 0; i < sorted.size(); i++) {
+            assertEquals("select(" + i + ") did not return the expected key.", sorted.get(i), tree.select(i));
+            assertEquals("rank(" + sorted.get(i) + ") was not the expected one.", i, tree.rank(sorted.get(i)));
+            assertEquals("rank(" + (sorted.get(i) + 1) + ") was not the expected one.", i + 1, tree.rank(sorted.get(i) + 1));
+        }
+        assertEquals("countInRange over the whole key space was not the expected one.", sorted.size(),
+                tree.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals("countInRange over [4, 12] was not the expected one.", 3, tree.countInRange(4, 12)); // 4, 8, 10
+        assertEquals("countInRange over an inverted range should be 0.", 0, tree.countInRange(12, 4));
+        try {
+            tree.select(sorted.size());
+            fail("select() with an index equal to the count should have thrown an IndexOutOfBoundsException.");
+        } catch(IndexOutOfBoundsException ignored) {}
+    }
+
+    /* Insertions and deletions walk an explicit path instead of recursing, and stop rebalancing as soon as a subtree
+     * keeps its height. On average, only a handful of nodes should be rebalanced per update, far fewer than the
+     * nodes on the path.
+     */
+    @Test
+    public void testRetracingStopsEarly() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(1);
+        long pathTotal = 0, retraceTotal = 0;
+        for(int i = 0; i < NUMS; i++) {
+            tree.insert(r.nextInt());
+            pathTotal += tree.getLastPathLength();
+            retraceTotal += tree.getLastRetraceLength();
+        }
+        assertTrue("Insertions rebalanced " + retraceTotal + " nodes over paths of " + pathTotal + " nodes in total.",
+                retraceTotal * 2 < pathTotal);
+        assertTrue("Random insertions in an AVL-1 tree should have caused some rotations.", tree.getRotationCount() > 0);
+        assertTrue(tree.isAVLGBalanced());
+    }
+
+    /* Very lax trees get very deep. Since neither updates nor checks are recursive, this should not overflow the stack. */
+    @Test
+    public void testDeepTreeDoesNotOverflowStack() throws InvalidBalanceException, EmptyTreeException {
+        int keys = 15 * NUMS, imbalance = 5 * NUMS;
+        tree = new AVLGTree<>(imbalance);
+        for(int i = 0; i < keys; i++)
+            tree.insert(i);
+        assertTrue("The AVL-" + imbalance + " tree was expected to be very deep.", tree.getHeight() >= imbalance);
+        assertTrue(tree.isBST());
+        assertTrue(tree.isAVLGBalanced());
+        for(int i = 0; i < keys; i++)
+            assertEquals("Could not delete key " + i + ".", Integer.valueOf(i), tree.delete(i));
+        assertTrue(tree.isEmpty());
+    }
+
+    /* Bulk-loading sorted keys should give a perfectly balanced tree, without a single rotation. */
+    @Test
+    public void testBulkLoad() throws InvalidBalanceException, EmptyTreeException {
+        List<Integer> keys = new ArrayList<>();
+        for(int i = 0; i < NUMS; i++)
+            keys.add(3 * i);
+        tree = AVLGTree.fromSorted(1, keys.iterator(), NUMS);
+        assertEquals("The bulk-loaded tree did not hold all the keys.", NUMS, tree.getCount());
+        assertEquals("The bulk-loaded tree was not perfectly balanced.",
+                (int)Math.floor(Math.log(NUMS) / Math.log(2)), tree.getHeight());
+        assertEquals("Bulk-loading should not rotate anything.", 0, tree.getRotationCount());
+        for(int i = 0; i < NUMS; i++)
+            assertEquals("Key " + (3 * i) + " was not found after the bulk load.", Integer.valueOf(3 * i), tree.search(3 * i));
+        assertNull("Key 1 was never loaded.", tree.search(1));
+    }
+
+    /* A large source can be appended chunk by chunk, as long as every chunk comes after the keys already loaded. */
+    @Test
+    public void testBulkLoadInChunks() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(2);
+        List<Integer> keys = new ArrayList<>();
+        for(int chunk = 1; chunk <= 10; chunk++) {
+            keys.clear();
+            for(int i = 0; i < chunk * chunk; i++)
+                keys.add(tree.getCount() + i);
+            tree.appendSorted(keys.iterator(), keys.size());
+            assertTrue("After appending chunk " + chunk + ", the tree was no longer AVL-2 balanced.", tree.isAVLGBalanced());
+        }
+        assertEquals("The tree did not hold all the appended keys.", 385, tree.getCount());
+        for(int i = 0; i < 385; i++)
+            assertEquals("select(" + i + ") did not return the expected key.", Integer.valueOf(i), tree.select(i));
+        try {
+            tree.appendSorted(Arrays.asList(500, 499).iterator(), 2);
+            fail("Appending unsorted keys should have thrown an IllegalArgumentException.");
+        } catch(IllegalArgumentException ignored) {}
+        try {
+            tree.appendSorted(Arrays.asList(10).iterator(), 1);
+            fail("Appending a key smaller than the tree's maximum should have thrown an IllegalArgumentException.");
+        } catch(IllegalArgumentException ignored) {}
+        assertEquals("Rejected chunks should leave the tree untouched.", 385, tree.getCount());
+    }
+
+    /* The cursor should return the keys in order, range iteration should respect both (inclusive) ends, and
+     * modifying the tree in the middle of a traversal should make the cursor fail fast.
+     */
+    @Test
+    public void testCursorAndNavigation() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(2);
+        for(int i = 0; i < NUMS; i++)
+            tree.insert(10 * ((i * 7) % NUMS)); // 0, 10, ..., 10 * (NUMS - 1) in scrambled order.
+        int expected = 0;
+        for(Integer key : tree) {
+            assertEquals("The cursor returned keys out of order.", Integer.valueOf(expected), key);
+            expected += 10;
+        }
+        assertEquals("The cursor did not return every key.", 10 * NUMS, expected);
+
+        expected = 30;
+        for(Integer key : tree.subRange(25, 70)) {
+            assertEquals("Range iteration returned an unexpected key.", Integer.valueOf(expected), key);
+            expected += 10;
+        }
+        assertEquals("Range iteration over [25, 70] should end at 70.", 80, expected);
+        assertFalse("An inverted range should be empty.", tree.subRange(70, 25).iterator().hasNext());
+
+        assertEquals(Integer.valueOf(20), tree.floor(25));
+        assertEquals(Integer.valueOf(30), tree.ceiling(25));
+        assertEquals(Integer.valueOf(30), tree.floor(30));
+        assertEquals(Integer.valueOf(40), tree.higher(30));
+        assertEquals(Integer.valueOf(20), tree.lower(30));
+        assertNull("There is no key below 0.", tree.lower(0));
+        assertNull("There is no key above the maximum.", tree.ceiling(10 * NUMS));
+
+        Iterator<Integer> it = tree.iterator();
+        it.next();
+        tree.delete(500);
+        try {
+            it.next();
+            fail("Traversing the tree after a deletion should have thrown a ConcurrentModificationException.");
+        } catch(ConcurrentModificationException ignored) {}
+    }
+
+    /* Several writers insert disjoint ranges of keys into a shared ConcurrentAVLGTree while readers keep searching
+     * for keys that are already there. Readers should always find them, and no insertion should get lost.
+     */
+    @Test
+    public void testConcurrentTree() throws InvalidBalanceException, EmptyTreeException, InterruptedException {
+        ConcurrentAVLGTree<Integer> shared = new ConcurrentAVLGTree<>(1);
+        shared.insert(-1);
+        int writers = 4, readers = 4;
+        AtomicBoolean failed = new AtomicBoolean(false);
+        Thread[] threads = new Thread[writers + readers];
+        for(int w = 0; w < writers; w++) {
+            int base = w * NUMS;
+            threads[w] = new Thread(() -> {
+                for(int i = 0; i < NUMS; i++)
+                    shared.insert(base + i);
+            });
+        }
+        for(int rd = 0; rd < readers; rd++) {
+            threads[writers + rd] = new Thread(() -> {
+                try {
+                    for(int i = 0; i < 10 * NUMS; i++)
+                        if(shared.search(-1) == null)
+                            failed.set(true);
+                } catch(EmptyTreeException e) {
+                    failed.set(true);
+                }
+            });
+        }
+        for(Thread t : threads)
+            t.start();
+        for(Thread t : threads)
+            t.join();
+        assertFalse("A reader failed to find a key which was in the tree all along.", failed.get());
+        assertEquals("Some concurrent insertions were lost.", writers * NUMS + 1, shared.getCount());
+        assertTrue("The shared tree was not AVL-1 balanced after the concurrent insertions.", shared.isAVLGBalanced());
+        for(int i = 0; i < writers * NUMS; i++)
+            assertEquals("Key " + i + " was not found after the concurrent insertions.", Integer.valueOf(i), shared.search(i));
+    }
+
+    /* A snapshot should keep its contents while the tree it was taken from keeps changing, and should refuse
+     * to be changed itself.
+     */
+    @Test
+    public void testSnapshots() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(1);
+        for(int i = 0; i < NUMS; i++)
+            tree.insert(i);
+        AVLGTree<Integer> snapshot = tree.snapshot();
+        for(int i = 0; i < NUMS; i += 2)
+            tree.delete(i);
+        for(int i = NUMS; i < 2 * NUMS; i++)
+            tree.insert(i);
+        AVLGTree<Integer> second = tree.snapshot();
+        tree.clear();
+
+        assertTrue(snapshot.isSnapshot());
+        assertEquals("The first snapshot lost or gained keys.", NUMS, snapshot.getCount());
+        int expected = 0;
+        for(Integer key : snapshot)
+            assertEquals("The first snapshot changed along with the tree.", Integer.valueOf(expected++), key);
+        assertTrue(snapshot.isAVLGBalanced());
+        assertEquals("The second snapshot lost or gained keys.", NUMS + NUMS / 2, second.getCount());
+        assertNull("Key 0 was deleted before the second snapshot.", second.search(0));
+        assertEquals(Integer.valueOf(1), second.search(1));
+        assertTrue("The tree itself should be empty.", tree.isEmpty());
+        try {
+            snapshot.insert(-1);
+            fail("Inserting into a snapshot should have thrown an UnsupportedOperationException.");
+        } catch(UnsupportedOperationException ignored) {}
+    }
+
+    /* The statistics should tell single rotations from double ones, and record the path length of every search. */
+    @Test
+    public void testStats() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(1);
+        assertNull("Statistics should be disabled by default.", tree.getStats());
+        AVLGTreeStats stats = tree.enableStats();
+        tree.insert(20);
+        tree.insert(10);
+        tree.insert(5);  // Single right rotation.
+        tree.insert(30);
+        tree.insert(25); // Double (right-left) rotation about 20.
+        assertEquals("Wrong number of single rotations.", 1, stats.getSingleRotations());
+        assertEquals("Wrong number of double rotations.", 1, stats.getDoubleRotations());
+        assertEquals("Wrong number of insertions.", 5, stats.getInsertions());
+
+        tree.search(10); // The root: 1 node.
+        tree.search(25); // 2 nodes.
+        tree.search(31); // 10 -> 25 -> 30: 3 nodes.
+        assertEquals("Wrong number of searches.", 3, stats.getSearches());
+        assertEquals("Wrong average search path length.", 2.0, stats.getAverageSearchPathLength(), 1e-9);
+        long[] histogram = stats.getSearchDepthHistogram();
+        assertEquals("The histogram should end at the longest search path.", 4, histogram.length);
+        assertEquals(1, histogram[1]);
+        assertEquals(1, histogram[2]);
+        assertEquals(1, histogram[3]);
+
+        stats.reset();
+        assertEquals(0, stats.getSearches());
+        tree.disableStats();
+        assertNull(tree.getStats());
+    }
+
+    /* An adaptive tree should relax its bound all the way under an update-only workload, and tighten it back, through
+     * its incremental sweep, under a read-only one, staying balanced with respect to the bound it reports throughout.
+     */
+    @Test
+    public void testAdaptiveImbalance() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(3);
+        try {
+            tree.enableAdaptiveImbalance(4, 2);
+            fail("Inverted adaptive bounds should have been rejected.");
+        } catch(InvalidBalanceException ignored) {}
+        tree.enableAdaptiveImbalance(1, 8);
+        assertTrue("The tree should be adaptive.", tree.isAdaptive());
+
+        /* Insertions only: the bound should relax all the way. */
+        for(int i = 0; i < 10_000; i++)
+            tree.insert(i);
+        assertEquals("An update-only workload should relax the bound.", 8, tree.getMaxImbalance());
+        assertTrue(tree.isAVLGBalanced());
+
+        /* Searches only: the bound should tighten, incrementally, all the way back. */
+        for(int i = 0; i < 100_000; i++)
+            assertEquals(Integer.valueOf(i % 10_000), tree.search(i % 10_000));
+        assertFalse("The tree should be done rebalancing.", tree.isRebalancing());
+        assertEquals("A read-only workload should tighten the bound.", 1, tree.getMaxImbalance());
+        assertTrue(tree.isAVLGBalanced());
+        assertEquals(10_000, tree.getCount());
+
+        tree.disableAdaptiveImbalance();
+        assertFalse(tree.isAdaptive());
+        assertEquals("Disabling should keep the current bound.", 1, tree.getMaxImbalance());
+    }
+
+    /* IntAVLGTree and LongAVLGTree rebalance exactly like AVLGTree does, so a random mix of insertions and deletions
+     * should leave all three trees with the same shape: same height, same root, same order statistics.
+     */
+    @Test
+    public void testPrimitiveTreesMatchGenericTree() throws InvalidBalanceException, EmptyTreeException {
+        Random r = new Random(SEED);
+        for(int g = 1; g <= 4; g++) {
+            tree = new AVLGTree<>(g);
+            IntAVLGTree ints = new IntAVLGTree(g);
+            LongAVLGTree longs = new LongAVLGTree(g);
+            for(int i = 0; i < 5_000; i++) {
+                int key = r.nextInt(2_000);
+                if(tree.isEmpty() || tree.search(key) == null) {
+                    tree.insert(key);
+                    ints.insert(key);
+                    longs.insert(key);
+                } else {
+                    tree.delete(key);
+                    assertTrue(ints.delete(key));
+                    assertTrue(longs.delete(key));
+                }
+                /* Same rotations, same shape. */
+                assertEquals(tree.getCount(), ints.getCount());
+                assertEquals(tree.getHeight(), ints.getHeight());
+                assertEquals(tree.getHeight(), longs.getHeight());
+                if(!tree.isEmpty()) {
+                    assertEquals((int)tree.getRoot(), ints.getRoot());
+                    assertEquals((long)tree.getRoot(), longs.getRoot());
+                }
+            }
+            for(int i = 0; i < ints.getCount(); i += 17) {
+                assertEquals((int)tree.select(i), ints.select(i));
+                assertEquals(i, ints.rank(ints.select(i)));
+                assertTrue(longs.search(longs.select(i)));
+            }
+            assertTrue(ints.isAVLGBalanced());
+            assertTrue(longs.isAVLGBalanced());
+        }
+
+        /* Very lax trees get very deep, which should not overflow the stack of the check either. */
+        IntAVLGTree ints = new IntAVLGTree(5 * NUMS);
+        LongAVLGTree longs = new LongAVLGTree(5 * NUMS);
+        for(int i = 0; i < 15 * NUMS; i++) {
+            ints.insert(i);
+            longs.insert(i);
+        }
+        assertTrue("The AVL-" + (5 * NUMS) + " tree was expected to be very deep.", ints.getHeight() >= 5 * NUMS);
+        assertTrue(ints.isAVLGBalanced());
+        assertTrue(longs.isAVLGBalanced());
+    }
+
+    /* CompactAVLGTree should also keep the very shape of AVLGTree. Its pool should grow past a chunk boundary, and
+     * recycle the slots of deleted nodes instead of growing further.
+     */
+    @Test
+    public void testCompactTree() throws InvalidBalanceException, EmptyTreeException {
+        Random r = new Random(SEED);
+        tree = new AVLGTree<>(2);
+        CompactAVLGTree<Integer> compact = new CompactAVLGTree<>(2);
+        for(int i = 0; i < 5_000; i++) {
+            int key = r.nextInt(2_000);
+            if(tree.isEmpty() || tree.search(key) == null) {
+                tree.insert(key);
+                compact.insert(key);
+            } else {
+                assertEquals(tree.delete(key), compact.delete(key));
+            }
+            /* Same rotations, same shape. */
+            assertEquals(tree.getHeight(), compact.getHeight());
+            if(!tree.isEmpty())
+                assertEquals(tree.getRoot(), compact.getRoot());
+        }
+        for(int i = 0; i < compact.getCount(); i += 17)
+            assertEquals(tree.select(i), compact.select(i));
+
+        /* Crossing a chunk boundary, then recycling every slot. */
+        compact.clear();
+        int n = CompactAVLGTree.CHUNK_SIZE + 10;
+        for(int i = 0; i < n; i++)
+            compact.insert(i);
+        assertTrue(compact.isAVLGBalanced());
+        assertEquals(Integer.valueOf(CompactAVLGTree.CHUNK_SIZE + 5), compact.search(CompactAVLGTree.CHUNK_SIZE + 5));
+        int capacity = compact.getCapacity();
+        for(int i = 0; i < n; i += 2)
+            assertEquals(Integer.valueOf(i), compact.delete(i));
+        for(int i = 0; i < n; i += 2)
+            compact.insert(-i - 1);
+        assertEquals("Freed slots should have been recycled.", capacity, compact.getCapacity());
+        assertEquals(n, compact.getCount());
+        assertEquals(Integer.valueOf(-(n - 1)), compact.select(0)); // n is even.
+
+        /* Very lax trees get very deep, which should not overflow the stack of the check. */
+        compact = new CompactAVLGTree<>(5 * NUMS);
+        for(int i = 0; i < 15 * NUMS; i++)
+            compact.insert(i);
+        assertTrue("The AVL-" + (5 * NUMS) + " tree was expected to be very deep.", compact.getHeight() >= 5 * NUMS);
+        assertTrue(compact.isAVLGBalanced());
+    }
+
+    /* Splitting a tree should leave the smaller keys in it and move the others to a new tree, both of them balanced,
+     * and joining them back around a key in between should empty them into a balanced tree holding everything.
+     */
+    @Test
+    public void testSplitAndJoin() throws InvalidBalanceException, EmptyTreeException {
+        tree = new AVLGTree<>(2);
+        for(int i = 0; i < NUMS; i++)
+            tree.insert(2 * i);
+        AVLGTree<Integer> upper = tree.split(NUMS);
+        assertEquals("The lower half should hold the keys smaller than the split key.", NUMS / 2, tree.getCount());
+        assertEquals("The upper half should hold the keys larger than or equal to the split key.", NUMS / 2, upper.getCount());
+        assertEquals(Integer.valueOf(NUMS), upper.select(0));
+        assertTrue(tree.isAVLGBalanced());
+        assertTrue(upper.isAVLGBalanced());
+
+        upper.delete(NUMS);
+        AVLGTree<Integer> joined = AVLGTree.join(tree, NUMS + 1, upper);
+        assertTrue("join should have emptied its arguments.", tree.isEmpty() && upper.isEmpty());
+        assertEquals(NUMS, joined.getCount());
+        assertEquals(Integer.valueOf(NUMS + 1), joined.search(NUMS + 1));
+        assertTrue(joined.isAVLGBalanced());
+        try {
+            AVLGTree.join(joined, 0, new AVLGTree<>(2));
+            fail("Joining out-of-order keys should have thrown an IllegalArgumentException.");
+        } catch(IllegalArgumentException ignored) {}
+
+        /* The halves of a split are independent: combining or deleting from either one leaves the other unchanged. */
+        AVLGTree<Integer> lower = new AVLGTree<>(1);
+        for(int i = 0; i < 100; i++)
+            lower.insert(i);
+        upper = lower.split(50);
+        lower.union(upper);
+        assertEquals("The union should not have changed the upper half.", 50, upper.getCount());
+        for(int i = 75; i < 78; i++)
+            lower.delete(i);
+        for(int i = 50; i < 100; i++)
+            assertEquals("Deleting from the lower half removed a key from the upper half.", Integer.valueOf(i), upper.search(i));
+        assertTrue(upper.isAVLGBalanced());
+
+        lower = new AVLGTree<>(1);
+        for(int i = 0; i < 100; i++)
+            lower.insert(i);
+        upper = lower.split(50);
+        upper.union(lower);
+        assertEquals("The union should not have changed the lower half.", 50, lower.getCount());
+        for(int i = 10; i < 13; i++)
+            upper.delete(i);
+        for(int i = 0; i < 50; i++)
+            assertEquals("Deleting from the upper half removed a key from the lower half.", Integer.valueOf(i), lower.search(i));
+        assertTrue(lower.isAVLGBalanced());
+        assertEquals(97, upper.getCount());
+    }
+
+    /* Union, intersection and difference on trees large enough to run in parallel, and with different imbalance
+     * parameters, should give the expected keys, and leave their operands unchanged and independent.
+     */
+    @Test
+    public void testSetOperations() throws InvalidBalanceException, EmptyTreeException {
+        int n = 50_000; // Large enough for the operations to fork.
+        AVLGTree<Integer> evens = new AVLGTree<>(1), triples = new AVLGTree<>(3);
+        for(int i = 0; i < n; i += 2)
+            evens.insert(i);
+        for(int i = 0; i < n; i += 3)
+            triples.insert(i);
+
+        tree = new AVLGTree<>(1);
+        tree.union(evens); // Shares the nodes of evens.
+        tree.union(triples); // Rebuilds the AVL-3 operand first.
+        assertEquals("Wrong union size.", n / 2 + n / 3 + 1 - n / 6 - 1, tree.getCount());
+        assertTrue(tree.isAVLGBalanced());
+        assertEquals(Integer.valueOf(9), tree.search(9));
+
+        tree.intersect(evens);
+        assertEquals("The intersection with evens should give evens back.", evens.getCount(), tree.getCount());
+        assertNull(tree.search(9));
+
+        tree.difference(triples);
+        assertEquals("Wrong difference size.", n / 2 - (n / 6 + 1), tree.getCount());
+        assertNull(tree.search(6));
+        assertEquals(Integer.valueOf(4), tree.search(4));
+        assertTrue(tree.isAVLGBalanced());
+
+        /* The operands are left untouched, and remain independent trees. */
+        assertEquals(n / 2, evens.getCount());
+        assertEquals(n / 3 + 1, triples.getCount());
+        triples.delete(9);
+        triples.insert(-1);
+        assertNull(tree.search(-1));
+        assertEquals(n / 3 + 1, triples.getCount());
+    }
+
+    /* AVLGTreeMap should behave exactly like java.util.TreeMap under a random mix of put, computeIfAbsent, merge and
+     * remove, and should catch mapping functions which modify the map behind its back.
+     */
+    @Test
+    public void testTreeMap() throws InvalidBalanceException {
+        AVLGTreeMap<Integer, String> map = new AVLGTreeMap<>(2);
+        TreeMap<Integer, String> reference = new TreeMap<>();
+        Random r = new Random(SEED);
+        for(int i = 0; i < 20_000; i++) {
+            Integer key = r.nextInt(1_000);
+            String value = Integer.toString(r.nextInt(10));
+            switch(r.nextInt(4)) {
+                case 0:
+                    assertEquals(reference.put(key, value), map.put(key, value));
+                    break;
+                case 1:
+                    assertEquals(reference.computeIfAbsent(key, k -> value), map.computeIfAbsent(key, k -> value));
+                    break;
+                case 2: // Concatenates, or removes the mapping once it gets too long.
+                    assertEquals(reference.merge(key, value, (a, b) -> a.length() > 3 ? null : a + b),
+                            map.merge(key, value, (a, b) -> a.length() > 3 ? null : a + b));
+                    break;
+                default:
+                    assertEquals(reference.remove(key), map.remove(key));
+            }
+            assertEquals(reference.size(), map.getCount());
+        }
+        for(int key = 0; key < 1_000; key++)
+            assertEquals(reference.get(key), map.get(key));
+        assertTrue(map.isAVLGBalanced());
+        try {
+            map.computeIfAbsent(-1, k -> map.put(-2, "nested"));
+            fail("A mapping function which modifies the map should have been caught.");
+        } catch(ConcurrentModificationException ignored) {}
+
+        /* Very lax trees get very deep, which should not overflow the stack of the check. */
+        AVLGTreeMap<Integer, String> deep = new AVLGTreeMap<>(5 * NUMS);
+        for(int i = 0; i < 15 * NUMS; i++)
+            deep.put(i, "deep");
+        assertTrue("The AVL-" + (5 * NUMS) + " tree was expected to be very deep.", deep.getHeight() >= 5 * NUMS);
+        assertTrue(deep.isAVLGBalanced());
+    }
+
+    /* A multiset should count repeats everywhere: in its size, its order statistics and its iterators, and in set
+     * operations, where counts add up, take their minimum or get subtracted. Sets and multisets do not mix.
+     */
+    @Test
+    public void testMultiset() throws InvalidBalanceException, EmptyTreeException {
+        AVLGTree<Integer> tree = new AVLGTree<>(2, true);
+        TreeMap<Integer, Integer> reference = new TreeMap<>();
+        Random r = new Random(SEED);
+        for(int i = 0; i < 20_000; i++) {
+            Integer key = r.nextInt(200);
+            if(r.nextInt(3) == 0) {
+                assertEquals(reference.containsKey(key) ? key : null, tree.delete(key));
+                reference.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+            } else {
+                tree.insert(key);
+                reference.merge(key, 1, Integer::sum);
+            }
+        }
+        int total = reference.values().stream().mapToInt(Integer::intValue).sum();
+        assertEquals(total, tree.getCount());
+        assertTrue(tree.isAVLGBalanced());
+        ArrayList<Integer> expected = new ArrayList<>();
+        reference.forEach((key, count) -> expected.addAll(Collections.nCopies(count, key)));
+        ArrayList<Integer> actual = new ArrayList<>();
+        tree.forEach(actual::add);
+        assertEquals(expected, actual);
+        for(int i = 0; i < total; i++)
+            assertEquals(expected.get(i), tree.select(i));
+        for(int key = 0; key < 200; key++) {
+            assertEquals((int)reference.getOrDefault(key, 0), tree.count(key));
+            assertEquals(reference.headMap(key).values().stream().mapToInt(Integer::intValue).sum(), tree.rank(key));
+        }
+
+        AVLGTree<Integer> other = new AVLGTree<>(1, true);
+        for(int key = 0; key < 200; key += 2)
+            for(int j = 0; j < 3; j++)
+                other.insert(key);
+        AVLGTree<Integer> union = new AVLGTree<>(2, true), intersection = new AVLGTree<>(2, true);
+        union.union(tree);
+        intersection.union(tree);
+        union.union(other);
+        intersection.intersect(other);
+        tree.difference(other);
+        for(int key = 0; key < 200; key++) {
+            int count = reference.getOrDefault(key, 0), otherCount = (key % 2 == 0) ? 3 : 0;
+            assertEquals(count + otherCount, union.count(key));
+            assertEquals(Math.min(count, otherCount), intersection.count(key));
+            assertEquals(Math.max(count - otherCount, 0), tree.count(key));
+        }
+        assertTrue(union.isAVLGBalanced() && intersection.isAVLGBalanced() && tree.isAVLGBalanced());
+        try {
+            new AVLGTree<Integer>(2).union(other);
+            fail("A set and a multiset should not be combined.");
+        } catch(IllegalArgumentException ignored) {}
+    }
+
+    /* A tree written to a file and read back should have the same keys, counts, shape and imbalance parameter, and be
+     * writable again, however deep. Files which are not snapshots, or corrupt ones, should be rejected with an
+     * IOException.
+     */
+    @Test
+    public void testWriteToAndReadFrom() throws InvalidBalanceException, EmptyTreeException, IOException {
+        Path file = Files.createTempFile("avlg", ".snapshot");
+        try {
+            AVLGTree<Integer> tree = new AVLGTree<>(3);
+            Random r = new Random(SEED);
+            for(int i = 0; i < 10 * NUMS; i++)
+                tree.insert(r.nextInt());
+            tree.writeTo(file, KeyCodec.INTEGER);
+            AVLGTree<Integer> copy = AVLGTree.readFrom(file, KeyCodec.INTEGER);
+            assertEquals(tree.getMaxImbalance(), copy.getMaxImbalance());
+            assertEquals(tree.getHeight(), copy.getHeight());
+            assertEquals(tree.getRoot(), copy.getRoot());
+            ArrayList<Integer> keys = new ArrayList<>(), copiedKeys = new ArrayList<>();
+            tree.forEach(keys::add);
+            copy.forEach(copiedKeys::add);
+            assertEquals(keys, copiedKeys);
+            assertTrue(copy.isAVLGBalanced());
+            copy.insert(0); // The restored tree is a regular, writable tree.
+            assertEquals(Integer.valueOf(0), copy.search(0));
+
+            AVLGTree<String> words = new AVLGTree<>(1, true);
+            for(String word : "the quick brown fox jumps over the lazy dog the end".split(" "))
+                words.insert(word);
+            words.writeTo(file, KeyCodec.STRING);
+            AVLGTree<String> copiedWords = AVLGTree.readFrom(file, KeyCodec.STRING);
+            assertEquals(3, copiedWords.count("the"));
+            assertEquals(words.getCount(), copiedWords.getCount());
+
+            Files.write(file, new byte[]{1, 2, 3});
+            try {
+                AVLGTree.readFrom(file, KeyCodec.INTEGER);
+                fail("A file which is not a snapshot should have been rejected.");
+            } catch(IOException ignored) {}
+
+            /* Corrupt snapshots: the records start after a 14-byte header, each with a flag byte before its key. */
+            AVLGTree<String> word = new AVLGTree<>(1);
+            word.insert("abc");
+            word.writeTo(file, KeyCodec.STRING);
+            byte[] bytes = Files.readAllBytes(file);
+            for(int length : new int[]{-1, Integer.MAX_VALUE}) {
+                for(int i = 0; i < 4; i++)
+                    bytes[15 + i] = (byte)(length >>> (24 - 8 * i));
+                Files.write(file, bytes);
+                try {
+                    AVLGTree.readFrom(file, KeyCodec.STRING);
+                    fail("A string key of length " + length + " should have been rejected.");
+                } catch(IOException ignored) {}
+            }
+            AVLGTree<Integer> small = new AVLGTree<>(1);
+            for(int key : new int[]{2, 1, 3})
+                small.insert(key);
+            small.writeTo(file, KeyCodec.INTEGER);
+            bytes = Files.readAllBytes(file);
+            bytes[23] = 3; // The root is 2, its left child (whose key ends at byte 23) 1, and its right child 3.
+            Files.write(file, bytes);
+            try {
+                AVLGTree.readFrom(file, KeyCodec.INTEGER);
+                fail("Keys out of order should have been rejected.");
+            } catch(IOException ignored) {}
+
+            /* A legitimately very deep tree should be read back without overflowing the stack. */
+            AVLGTree<Integer> deep = new AVLGTree<>(100 * NUMS);
+            for(int i = 0; i < 50 * NUMS; i++)
+                deep.insert(i);
+            deep.writeTo(file, KeyCodec.INTEGER);
+            AVLGTree<Integer> copiedDeep = AVLGTree.readFrom(file, KeyCodec.INTEGER);
+            assertEquals(deep.getHeight(), copiedDeep.getHeight());
+            assertEquals(deep.getCount(), copiedDeep.getCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /* A finger should find the same keys as a regular search, visit far fewer nodes on a sorted scan, and notice when
+     * the tree changes under it.
+     */
+    @Test
+    public void testFinger() throws InvalidBalanceException, EmptyTreeException {
+        AVLGTree<Integer> tree = new AVLGTree<>(2);
+        for(int i = 0; i < 2 * NUMS; i += 2)
+            tree.insert(i);
+        AVLGTree<Integer>.Finger finger = tree.finger();
+        AVLGTreeStats stats = tree.enableStats();
+        for(int i = 0; i < 2 * NUMS; i++)
+            assertEquals(i % 2 == 0 ? Integer.valueOf(i) : null, finger.search(i));
+        assertTrue("A sorted scan should visit a few nodes per search on average, not log n.",
+                stats.getAverageSearchPathLength() < 4);
+        Random r = new Random(SEED);
+        for(int i = 0; i < NUMS; i++) {
+            int key = r.nextInt(2 * NUMS);
+            assertEquals(tree.search(key), finger.search(key));
+            if(i % 10 == 0) { // The finger has to notice that the tree changed under it.
+                if(tree.search(key) == null)
+                    tree.insert(key);
+                else
+                    tree.delete(key);
+                assertEquals(tree.search(key), finger.search(key));
+            }
+        }
+    }
+
+    /* pollFirst() and pollLast() should remove the same keys as those of java.util.TreeMap, keeping the tree balanced,
+     * and only remove one occurrence at a time from a multiset.
+     */
+    @Test
+    public void testPollFirstAndPollLast() throws InvalidBalanceException, EmptyTreeException {
+        AVLGTree<Integer> tree = new AVLGTree<>(1);
+        TreeMap<Integer, Integer> reference = new TreeMap<>();
+        Random r = new Random(SEED);
+        for(int i = 0; i < NUMS; i++) {
+            int key = r.nextInt();
+            tree.insert(key);
+            reference.put(key, key);
+        }
+        while(!reference.isEmpty()) {
+            if(r.nextBoolean())
+                assertEquals(reference.pollFirstEntry().getKey(), tree.pollFirst());
+            else
+                assertEquals(reference.pollLastEntry().getKey(), tree.pollLast());
+            assertEquals(reference.size(), tree.getCount());
+            assertTrue(tree.isAVLGBalanced());
+        }
+        try {
+            tree.pollFirst();
+            fail("Polling an empty tree should have thrown an EmptyTreeException.");
+        } catch(EmptyTreeException ignored) {}
+
+        AVLGTree<Integer> multiset = new AVLGTree<>(2, true);
+        for(int key : new int[]{3, 1, 3, 2, 1})
+            multiset.insert(key);
+        assertEquals(Integer.valueOf(1), multiset.pollFirst());
+        assertEquals(Integer.valueOf(1), multiset.pollFirst());
+        assertEquals(Integer.valueOf(3), multiset.pollLast());
+        assertEquals(Integer.valueOf(3), multiset.pollLast());
+        assertEquals(Integer.valueOf(2), multiset.pollLast());
+        assertTrue(multiset.isEmpty());
+    }
+
+    /* isBST() and isAVLGBalanced() check the whole tree in a single (parallel) pass. They should catch a key which was
+     * changed behind the tree's back, deep below the root, and accept the tree again once it is changed back.
+     */
+    @Test
+    public void testVerifier() throws InvalidBalanceException {
+        /* Keys which can be changed behind the tree's back, to break its ordering. */
+        class MutableKey implements Comparable<MutableKey> {
+            private int value;
+
+            private MutableKey(int value) {
+                this.value = value;
+            }
+
+            @Override
+            public int compareTo(MutableKey other) {
+                return Integer.compare(value, other.value);
+            }
+        }
+        AVLGTree<MutableKey> tree = new AVLGTree<>(2);
+        MutableKey[] keys = new MutableKey[100 * NUMS]; // Large enough for the parallel pass.
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = new MutableKey(i);
+            tree.insert(keys[i]);
+        }
+        assertTrue(tree.isBST());
+        assertTrue(tree.isAVLGBalanced());
+        keys[keys.length / 3].value = keys.length; // Now larger than its right neighbours.
+        assertFalse(tree.isBST());
+        assertFalse(tree.isAVLGBalanced());
+        keys[keys.length / 3].value = keys.length / 3;
+        assertTrue(tree.isAVLGBalanced());
+
+        /* insert() lets a set take a key twice: the tree stays a valid, if non-strict, binary search tree. */
+        tree.insert(new MutableKey(keys.length / 2));
+        assertTrue(tree.isBST());
+        assertTrue(tree.isAVLGBalanced());
+    }
+
+    /* A filtered tree should answer every search exactly like an unfiltered one, while letting few misses through to the
+     * tree. The filter should follow deletions, grow along with the tree, and shrink when rebuilt.
+     */
+    @Test
+    public void testFilter() throws InvalidBalanceException, EmptyTreeException {
+        AVLGTree<Integer> tree = new AVLGTree<>(1);
+        for(int i = 0; i < 10 * NUMS; i += 2) // Even keys only: odd ones are misses.
+            tree.insert(i);
+        AVLGTreeFilter filter = tree.enableFilter();
+        for(int i = 0; i < 10 * NUMS; i++)
+            assertEquals(i % 2 == 0 ? Integer.valueOf(i) : null, tree.search(i));
+        assertEquals(5 * NUMS, filter.getDefiniteMisses() + filter.getFalsePositives());
+        assertTrue("Unexpected false-positive rate " + filter.getFalsePositiveRate(), filter.getFalsePositiveRate() < 0.05);
+
+        for(int i = 0; i < 10 * NUMS; i += 4) // Deletions must never turn present keys into definite misses.
+            tree.delete(i);
+        for(int i = 10 * NUMS; i < 100 * NUMS; i++) // Outgrows the filter, which gets rebuilt.
+            tree.insert(i);
+        assertTrue(filter.getCapacity() > 10 * NUMS);
+        assertEquals(tree.getCount(), filter.getKeyCount());
+        for(int i = 0; i < 100 * NUMS; i++)
+            assertEquals(i >= 10 * NUMS || i % 4 == 2 ? Integer.valueOf(i) : null, tree.search(i));
+
+        tree.difference(tree.snapshot());
+        tree.rebuildFilter();
+        assertEquals(0, filter.getKeyCount());
+        tree.insert(1);
+        assertEquals(Integer.valueOf(1), tree.search(1));
+        assertNull(tree.search(3));
+    }
 }
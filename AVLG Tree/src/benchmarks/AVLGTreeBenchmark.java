@@ -0,0 +1,68 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Random;
+
+/**
+ * <p>{@link AVLGTreeBenchmark} is a small regression benchmark for {@link AVLGTree}. It grows a single tree from
+ * 10<sup>3</sup> keys up to (by default) 10<sup>7</sup> keys and, at every power of ten, reports the average cost of
+ * an {@link AVLGTree#insert(Comparable) insertion}, a {@link AVLGTree#search(Comparable) search} and a
+ * {@link AVLGTree#delete(Comparable) deletion}. Since nodes cache their heights, all three operations should
+ * cost O(log n), which means that the reported numbers should stay <em>flat</em> (growing only by a small additive
+ * amount per order of magnitude) as the tree grows. A number that grows tenfold with every line is a regression.</p>
+ *
+ * <p>Run it as a Java application. The optional arguments are the maximum tree size and the imbalance parameter,
+ * e.g. {@code java benchmarks.AVLGTreeBenchmark 10000000 1}. Remember to give the JVM enough heap for the larger
+ * sizes ({@code -Xmx4g} is plenty for 10<sup>7</sup> keys).</p>
+ *
+ * @see AVLGTree
+ */
+public class AVLGTreeBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int SAMPLE = 100_000; // Operations timed per size.
+
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int maxImbalance = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Random r = new Random(SEED);
+        AVLGTree<Integer> tree = new AVLGTree<>(maxImbalance);
+
+        System.out.println("AVL-" + maxImbalance + " tree, " + SAMPLE + " timed operations per size.");
+        System.out.printf("%12s %8s %14s %14s %14s%n", "keys", "height", "insert ns/op", "search ns/op", "delete ns/op");
+        int inserted = 0;
+        for(int size = 1_000; size <= maxSize; size *= 10){
+            while(inserted < size - SAMPLE){
+                tree.insert(r.nextInt());
+                inserted++;
+            }
+            /* The last SAMPLE keys up to the target size are timed. */
+            int[] keys = new int[Math.min(SAMPLE, size - inserted)];
+            for(int i = 0; i < keys.length; i++)
+                keys[i] = r.nextInt();
+            long start = System.nanoTime();
+            for(int key : keys)
+                tree.insert(key);
+            double insertCost = (System.nanoTime() - start) / (double)keys.length;
+            inserted += keys.length;
+
+            start = System.nanoTime();
+            for(int key : keys)
+                tree.search(key);
+            double searchCost = (System.nanoTime() - start) / (double)keys.length;
+
+            /* Delete and re-insert, so that the tree keeps its size for the next round. */
+            start = System.nanoTime();
+            for(int key : keys)
+                tree.delete(key);
+            double deleteCost = (System.nanoTime() - start) / (double)keys.length;
+            for(int key : keys)
+                tree.insert(key);
+
+            System.out.printf("%12d %8d %14.1f %14.1f %14.1f%n", size, tree.getHeight(), insertCost, searchCost, deleteCost);
+        }
+    }
+}
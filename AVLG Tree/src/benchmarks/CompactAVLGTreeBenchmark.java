@@ -0,0 +1,78 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.CompactAVLGTree;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * <p>{@link CompactAVLGTreeBenchmark} compares the memory footprint and the garbage collection cost of an
+ * {@link AVLGTree} against those of a {@link CompactAVLGTree} holding the same keys. For each tree, it reports the
+ * heap that the tree retains once it has been built, the time spent building it, the time spent in the garbage
+ * collector while building it, and the duration of a full collection with the tree alive, which is roughly what
+ * every old-generation collection costs while the tree is in use.</p>
+ *
+ * <p>Both trees share the same boxed keys, which are created before anything is measured, so the reported footprint
+ * is that of the tree structure alone. Run it as a Java application with a fixed heap size, e.g.
+ * {@code java -Xms8g -Xmx8g benchmarks.CompactAVLGTreeBenchmark 20000000}.</p>
+ *
+ * @see CompactAVLGTree
+ */
+public class CompactAVLGTreeBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int maxImbalance = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Random r = new Random(SEED);
+        Integer[] keys = new Integer[n];
+        for(int i = 0; i < n; i++)
+            keys[i] = r.nextInt();
+
+        System.out.println("AVL-" + maxImbalance + " trees of " + n + " keys.");
+        System.out.printf("%-20s %12s %12s %12s %14s%n", "tree", "retained MB", "build ms", "GC ms", "full GC ms");
+
+        long before = usedHeap(), gc = gcMillis(), start = System.nanoTime();
+        AVLGTree<Integer> tree = new AVLGTree<>(maxImbalance);
+        for(Integer key : keys)
+            tree.insert(key);
+        report("AVLGTree", before, start, gc);
+        tree.search(keys[0]); // Keeps the tree reachable until here.
+        tree = null;
+
+        before = usedHeap(); gc = gcMillis(); start = System.nanoTime();
+        CompactAVLGTree<Integer> compact = new CompactAVLGTree<>(maxImbalance);
+        for(Integer key : keys)
+            compact.insert(key);
+        report("CompactAVLGTree", before, start, gc);
+        compact.search(keys[0]);
+    }
+
+    private static void report(String name, long heapBefore, long start, long gcBefore) {
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        long gcDuring = gcMillis() - gcBefore;
+        long fullGcStart = System.nanoTime();
+        long retained = usedHeap() - heapBefore;
+        double fullGcMillis = (System.nanoTime() - fullGcStart) / 1e6;
+        System.out.printf("%-20s %12.1f %12.1f %12d %14.1f%n", name, retained / 1048576.0, buildMillis, gcDuring, fullGcMillis);
+    }
+
+    /* Heap in use right after a full collection, i.e. what is actually reachable. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max(0, bean.getCollectionTime());
+        return total;
+    }
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.ConcurrentAVLGTree;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>{@link ConcurrentAVLGTreeBenchmark} measures how the throughput of a shared {@link ConcurrentAVLGTree} scales
+ * with the number of threads, from 1 to 64, under a read-mostly (90% searches, 10% updates) and a balanced (50/50)
+ * workload. As a baseline, every configuration is also run against a plain {@link AVLGTree} whose every call is
+ * wrapped in a global {@code synchronized} block. Updates are an even mix of insertions and deletions of random keys,
+ * so that the tree keeps its size for the duration of the run.</p>
+ *
+ * <p>Run it as a Java application. The optional arguments are the number of keys to pre-load, the number of
+ * milliseconds to measure every configuration for, and the imbalance parameter,
+ * e.g. {@code java benchmarks.ConcurrentAVLGTreeBenchmark 1000000 2000 1}.</p>
+ *
+ * @see ConcurrentAVLGTree
+ */
+public class ConcurrentAVLGTreeBenchmark {
+
+    private static final long SEED = 47;
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int[] READ_PERCENTAGES = {90, 50};
+
+    /* The operations of a run, so that both trees go through the exact same driver. */
+    private interface Workload {
+        void search(int key) throws EmptyTreeException;
+        void insert(int key);
+        void delete(int key) throws EmptyTreeException;
+    }
+
+    public static void main(String[] args) throws InvalidBalanceException, InterruptedException {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2_000;
+        int maxImbalance = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        ConcurrentAVLGTree<Integer> concurrent = new ConcurrentAVLGTree<>(maxImbalance);
+        AVLGTree<Integer> plain = new AVLGTree<>(maxImbalance);
+        SplittableRandom r = new SplittableRandom(SEED);
+        for(int i = 0; i < keys; i++) {
+            int key = r.nextInt(2 * keys);
+            concurrent.insert(key);
+            plain.insert(key);
+        }
+        Workload lockFree = new Workload() {
+            public void search(int key) throws EmptyTreeException { concurrent.search(key); }
+            public void insert(int key) { concurrent.insert(key); }
+            public void delete(int key) throws EmptyTreeException { concurrent.delete(key); }
+        };
+        Workload synced = new Workload() {
+            public void search(int key) throws EmptyTreeException { synchronized(plain) { plain.search(key); } }
+            public void insert(int key) { synchronized(plain) { plain.insert(key); } }
+            public void delete(int key) throws EmptyTreeException { synchronized(plain) { plain.delete(key); } }
+        };
+
+        System.out.println("AVL-" + maxImbalance + " trees of ~" + keys + " keys, " + millis + " ms per configuration.");
+        System.out.printf("%8s %8s %20s %20s%n", "reads %", "threads", "concurrent Mops/s", "synchronized Mops/s");
+        for(int reads : READ_PERCENTAGES)
+            for(int threads : THREADS)
+                System.out.printf("%8d %8d %20.2f %20.2f%n", reads, threads,
+                        run(lockFree, threads, reads, 2 * keys, millis), run(synced, threads, reads, 2 * keys, millis));
+    }
+
+    /* Runs the workload on the given number of threads for the given time; returns millions of operations per second. */
+    private static double run(Workload workload, int threads, int readPercentage, int keyRange, long millis)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] deadline = new long[1];
+        for(int t = 0; t < threads; t++) {
+            SplittableRandom r = new SplittableRandom(SEED + t);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    long ops = 0;
+                    while(System.nanoTime() < deadline[0]) {
+                        for(int i = 0; i < 256; i++) {
+                            int key = r.nextInt(keyRange);
+                            int dice = r.nextInt(100);
+                            if(dice < readPercentage)
+                                workload.search(key);
+                            else if((dice & 1) == 0)
+                                workload.insert(key);
+                            else
+                                workload.delete(key);
+                        }
+                        ops += 256;
+                    }
+                    operations.add(ops);
+                } catch(InterruptedException | EmptyTreeException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.start();
+        }
+        deadline[0] = System.nanoTime() + millis * 1_000_000L;
+        start.countDown();
+        done.await();
+        return operations.sum() / (millis * 1000.0);
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.AVLGTreeFilter;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Random;
+
+/**
+ * <p>{@link FilterBenchmark} measures what an {@link AVLGTreeFilter} buys on a miss-heavy workload. A tree of (by
+ * default) 10<sup>6</sup> random keys is searched with as many lookups, a given share of which (80% by default) are
+ * for absent keys, first without a filter and then with one. It reports the throughput of both, along with the
+ * measured and expected false-positive rates of the filter.</p>
+ *
+ * <p>Run it as a Java application, e.g. {@code java benchmarks.FilterBenchmark 1000000 0.8}.</p>
+ *
+ * @see AVLGTree#enableFilter()
+ */
+public class FilterBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int ROUNDS = 3; // Warm-up rounds plus the reported one.
+
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double missShare = args.length > 1 ? Double.parseDouble(args[1]) : 0.8;
+        Random r = new Random(SEED);
+        AVLGTree<Integer> tree = new AVLGTree<>(1);
+        Integer[] present = new Integer[n];
+        for(int i = 0; i < n; i++){
+            present[i] = 2 * r.nextInt(Integer.MAX_VALUE / 2); // Even keys are present, odd keys are misses.
+            tree.insert(present[i]);
+        }
+        Integer[] queries = new Integer[n];
+        for(int i = 0; i < n; i++)
+            queries[i] = (r.nextDouble() < missShare) ? 2 * r.nextInt(Integer.MAX_VALUE / 2) + 1 : present[r.nextInt(n)];
+
+        System.out.println(n + " keys, " + Math.round(100 * missShare) + "% of the searches are misses.");
+        System.out.printf("%16s %16s %12s %12s%n", "plain ops/s", "filtered ops/s", "measured FP", "expected FP");
+        double plain = 0, filtered = 0;
+        AVLGTreeFilter filter = null;
+        for(int round = 0; round < ROUNDS; round++){
+            tree.disableFilter();
+            plain = searches(tree, queries);
+            filter = tree.enableFilter();
+            filtered = searches(tree, queries);
+        }
+        System.out.printf("%16.0f %16.0f %12.4f %12.4f%n", plain, filtered, filter.getFalsePositiveRate(),
+                filter.getExpectedFalsePositiveRate());
+    }
+
+    private static double searches(AVLGTree<Integer> tree, Integer[] queries) throws EmptyTreeException {
+        long start = System.nanoTime();
+        for(Integer key : queries)
+            tree.search(key);
+        return queries.length / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.AVLGTreeStats;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Random;
+
+/**
+ * <p>{@link FingerSearchBenchmark} compares {@link AVLGTree#search(Comparable)}, which always starts from the root,
+ * against {@link AVLGTree.Finger#search(Comparable)}, which starts from the path of the previous lookup, on workloads
+ * with locality. A tree of (by default) 10<sup>6</sup> even keys is queried with three streams of as many lookups:</p>
+ *  <ul>
+ *      <li><b>sorted</b>: every key from 0 upwards, half of which are hits, as in a sorted scan or a merge.</li>
+ *      <li><b>clustered</b>: bursts of {@value #BURST} lookups within a window of {@value #CLUSTER_WIDTH} keys around a
+ *      random center.</li>
+ *      <li><b>random</b>: uniformly random keys, where fingers cannot help, to show what they cost.</li>
+ *  </ul>
+ *
+ * <p>For every stream, it reports the throughput of both and the average number of nodes they visit per lookup. Run it
+ * as a Java application, e.g. {@code java benchmarks.FingerSearchBenchmark 1000000 1}.</p>
+ *
+ * @see AVLGTree#finger()
+ */
+public class FingerSearchBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int BURST = 64;
+    private static final int CLUSTER_WIDTH = 1024;
+    private static final int ROUNDS = 3; // Warm-up rounds plus the reported one.
+
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxImbalance = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        AVLGTree<Integer> tree = new AVLGTree<>(maxImbalance);
+        Random r = new Random(SEED);
+        for(int i = 0; i < n; i++)
+            tree.insert(2 * i);
+        AVLGTreeStats stats = tree.enableStats();
+
+        Integer[][] streams = new Integer[3][n];
+        for(int i = 0; i < n; i++)
+            streams[0][i] = i;
+        for(int i = 0; i < n; i += BURST){
+            int center = r.nextInt(2 * n);
+            for(int j = i; j < Math.min(i + BURST, n); j++)
+                streams[1][j] = center + r.nextInt(CLUSTER_WIDTH) - CLUSTER_WIDTH / 2;
+        }
+        for(int i = 0; i < n; i++)
+            streams[2][i] = r.nextInt(2 * n);
+
+        System.out.println("AVL-" + maxImbalance + " tree of " + n + " keys.");
+        System.out.printf("%-10s %14s %14s %14s %14s%n", "stream", "search ops/s", "finger ops/s", "search nodes", "finger nodes");
+        String[] names = {"sorted", "clustered", "random"};
+        for(int s = 0; s < streams.length; s++){
+            double searchRate = 0, fingerRate = 0, searchNodes = 0, fingerNodes = 0;
+            for(int round = 0; round < ROUNDS; round++){
+                stats.reset();
+                long start = System.nanoTime();
+                for(Integer key : streams[s])
+                    tree.search(key);
+                searchRate = n / ((System.nanoTime() - start) / 1e9);
+                searchNodes = stats.getAverageSearchPathLength();
+
+                stats.reset();
+                AVLGTree<Integer>.Finger finger = tree.finger();
+                start = System.nanoTime();
+                for(Integer key : streams[s])
+                    finger.search(key);
+                fingerRate = n / ((System.nanoTime() - start) / 1e9);
+                fingerNodes = stats.getAverageSearchPathLength();
+            }
+            System.out.printf("%-10s %14.0f %14.0f %14.2f %14.2f%n", names[s], searchRate, fingerRate, searchNodes, fingerNodes);
+        }
+    }
+}
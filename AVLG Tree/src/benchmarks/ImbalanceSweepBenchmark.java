@@ -0,0 +1,204 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.AVLGTreeStats;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>{@link ImbalanceSweepBenchmark} quantifies what the imbalance parameter G of an {@link AVLGTree} buys. For every
+ * G, tree size and key distribution, it runs four workloads on a fresh tree and reports their throughput, the
+ * rotations they cost per operation and, for the workloads that search, the average number of nodes visited by a
+ * search (as gathered by {@link AVLGTree#enableStats()}):</p>
+ *  <ul>
+ *      <li><b>insert</b>: builds the tree by inserting its n keys in the order of the distribution.</li>
+ *      <li><b>search</b>: n searches for keys drawn from the distribution.</li>
+ *      <li><b>mixed</b>: n operations on keys drawn from the distribution, half of them searches and half of them
+ *      updates, which insert the key if it is absent and delete it otherwise, so the size of the tree stays put.</li>
+ *      <li><b>delete</b>: empties the tree by deleting its keys in the order of the distribution.</li>
+ *  </ul>
+ *
+ * <p>The distributions are:</p>
+ *  <ul>
+ *      <li><b>uniform</b>: keys are inserted and deleted in random order, and searched uniformly at random.</li>
+ *      <li><b>sorted</b> and <b>reverse</b>: keys are inserted, searched and deleted in increasing (respectively
+ *      decreasing) order. These are the worst case for rotations.</li>
+ *      <li><b>zipfian</b>: keys are inserted and deleted in random order, but searched and updated with a Zipfian
+ *      skew of {@value #ZIPF_EXPONENT}, so that a few keys get most of the traffic.</li>
+ *  </ul>
+ *
+ * <p>All the randomness comes from a fixed seed, so the key streams, and thus the rotation counts and search depths,
+ * are exactly reproducible from one run to the next; only the throughput depends on the machine. Every
+ * configuration is preceded by an unreported warm-up run on a small tree, so that the JIT compiler has done its
+ * work before anything is measured.</p>
+ *
+ * <p>Run it as a Java application. The optional arguments are comma-separated lists of tree sizes and of values
+ * of G, e.g. {@code java -Xmx4g benchmarks.ImbalanceSweepBenchmark 10000,100000,1000000 1,2,3,4,8}. The output is
+ * one line per configuration, in columns which are easy to load into a spreadsheet.</p>
+ *
+ * @see AVLGTreeBenchmark
+ * @see AVLGTreeStats
+ */
+public class ImbalanceSweepBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are reproducible.
+    private static final double ZIPF_EXPONENT = 0.99;
+    private static final int WARMUP_SIZE = 10_000;
+    private static final String[] DISTRIBUTIONS = {"uniform", "sorted", "reverse", "zipfian"};
+    private static final String[] WORKLOADS = {"insert", "search", "mixed", "delete"};
+
+    /* The key streams of one distribution: the order of insertion, the queries, and the order of deletion. */
+    private static class Streams {
+        private int[] inserts;
+        private int[] queries;
+        private int[] deletes;
+    }
+
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException {
+        int[] sizes = parse(args.length > 0 ? args[0] : "10000,100000,1000000");
+        int[] imbalances = parse(args.length > 1 ? args[1] : "1,2,3,4,8");
+
+        System.out.printf("%-8s %-8s %9s %3s %14s %12s %12s%n",
+                "workload", "stream", "size", "G", "ops/s", "rotations/op", "search depth");
+        for(int size : sizes){
+            for(String distribution : DISTRIBUTIONS){
+                Streams streams = streams(distribution, size, new Random(SEED));
+                Streams warmup = streams(distribution, WARMUP_SIZE, new Random(SEED));
+                for(int g : imbalances){
+                    run(warmup, g, null, 0);
+                    run(streams, g, distribution, size);
+                }
+            }
+        }
+    }
+
+    /* Runs the four workloads in sequence on one tree, reporting them unless distribution is null. */
+    private static void run(Streams streams, int maxImbalance, String distribution, int size)
+            throws InvalidBalanceException, EmptyTreeException {
+        AVLGTree<Integer> tree = new AVLGTree<>(maxImbalance);
+        AVLGTreeStats stats = tree.enableStats();
+        boolean[] present = new boolean[streams.inserts.length];
+        for(String workload : WORKLOADS){
+            stats.reset();
+            long rotations = tree.getRotationCount();
+            int ops;
+            long start = System.nanoTime();
+            switch(workload){
+                case "insert":
+                    for(int key : streams.inserts){
+                        tree.insert(key);
+                        present[key] = true;
+                    }
+                    ops = streams.inserts.length;
+                    break;
+                case "search":
+                    for(int key : streams.queries)
+                        tree.search(key);
+                    ops = streams.queries.length;
+                    break;
+                case "mixed":
+                    for(int i = 0; i < streams.queries.length; i++){
+                        int key = streams.queries[i];
+                        if((i & 1) == 0){
+                            tree.search(key);
+                        }else if(present[key]){
+                            tree.delete(key);
+                            present[key] = false;
+                        }else{
+                            tree.insert(key);
+                            present[key] = true;
+                        }
+                    }
+                    ops = streams.queries.length;
+                    break;
+                default:
+                    ops = 0;
+                    for(int key : streams.deletes){
+                        if(present[key]){
+                            tree.delete(key);
+                            present[key] = false;
+                            ops++;
+                        }
+                    }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if(distribution != null){
+                String depth = stats.getSearches() == 0 ? "-" : String.format("%.2f", stats.getAverageSearchPathLength());
+                System.out.printf("%-8s %-8s %9d %3d %14.0f %12.3f %12s%n", workload, distribution, size, maxImbalance,
+                        ops / seconds, (tree.getRotationCount() - rotations) / (double)Math.max(ops, 1), depth);
+            }
+        }
+    }
+
+    /* Keys are 0..n-1, so that whether a key is in the tree can be tracked in a plain array. */
+    private static Streams streams(String distribution, int n, Random r) {
+        Streams streams = new Streams();
+        int[] ascending = new int[n];
+        for(int i = 0; i < n; i++)
+            ascending[i] = i;
+        switch(distribution){
+            case "sorted":
+                streams.inserts = ascending;
+                streams.queries = ascending;
+                streams.deletes = ascending;
+                break;
+            case "reverse":
+                int[] descending = new int[n];
+                for(int i = 0; i < n; i++)
+                    descending[i] = n - 1 - i;
+                streams.inserts = descending;
+                streams.queries = descending;
+                streams.deletes = descending;
+                break;
+            default:
+                streams.inserts = shuffled(ascending, r);
+                streams.deletes = shuffled(ascending, r);
+                streams.queries = new int[n];
+                if(distribution.equals("uniform")){
+                    for(int i = 0; i < n; i++)
+                        streams.queries[i] = r.nextInt(n);
+                }else{
+                    /* The popular keys are scattered over the key space, not bunched up at its low end. */
+                    int[] keyOfRank = shuffled(ascending, r);
+                    double[] cdf = zipfCdf(n);
+                    for(int i = 0; i < n; i++){
+                        int rank = Arrays.binarySearch(cdf, r.nextDouble());
+                        rank = (rank < 0) ? -rank - 1 : rank;
+                        streams.queries[i] = keyOfRank[Math.min(rank, n - 1)];
+                    }
+                }
+        }
+        return streams;
+    }
+
+    private static int[] shuffled(int[] keys, Random r) {
+        int[] copy = keys.clone();
+        for(int i = copy.length - 1; i > 0; i--){
+            int j = r.nextInt(i + 1);
+            int swap = copy[i];
+            copy[i] = copy[j];
+            copy[j] = swap;
+        }
+        return copy;
+    }
+
+    /* Cumulative probabilities of ranks 0..n-1, where rank k has a weight of 1 / (k+1)^ZIPF_EXPONENT. */
+    private static double[] zipfCdf(int n) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for(int k = 0; k < n; k++){
+            total += 1 / Math.pow(k + 1, ZIPF_EXPONENT);
+            cdf[k] = total;
+        }
+        for(int k = 0; k < n; k++)
+            cdf[k] /= total;
+        return cdf;
+    }
+
+    private static int[] parse(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+}
@@ -0,0 +1,101 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.IntAVLGTree;
+import avlg.LongAVLGTree;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Random;
+
+/**
+ * <p>{@link PrimitiveAVLGTreeBenchmark} compares the boxed {@link AVLGTree AVLGTree&lt;Integer&gt;} and
+ * {@link AVLGTree AVLGTree&lt;Long&gt;} against their primitive specializations {@link IntAVLGTree} and
+ * {@link LongAVLGTree}. For every tree, it inserts the same random keys, searches for each of them, and deletes
+ * them all again, reporting the average cost of every kind of operation. Every measurement is repeated a few times
+ * and only the last round is reported, so that the JIT compiler has had its chance with every tree.</p>
+ *
+ * <p>Run it as a Java application. The optional arguments are the number of keys and the imbalance parameter,
+ * e.g. {@code java benchmarks.PrimitiveAVLGTreeBenchmark 1000000 1}.</p>
+ *
+ * @see AVLGTreeBenchmark
+ */
+public class PrimitiveAVLGTreeBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int ROUNDS = 5; // Warm-up rounds plus the reported one.
+
+    /* The operations under test, so that all four trees go through the very same loop. */
+    private interface Subject {
+        void insert(int i) throws EmptyTreeException;
+        boolean search(int i) throws EmptyTreeException;
+        void delete(int i) throws EmptyTreeException;
+    }
+
+    private static long sink; // Keeps the JIT compiler from dropping the searches.
+
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxImbalance = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Random r = new Random(SEED);
+        int[] ints = new int[n];
+        long[] longs = new long[n];
+        for(int i = 0; i < n; i++){
+            ints[i] = r.nextInt();
+            longs[i] = r.nextLong();
+        }
+
+        System.out.println("AVL-" + maxImbalance + " trees of " + n + " keys.");
+        System.out.printf("%-24s %14s %14s %14s%n", "tree", "insert ns/op", "search ns/op", "delete ns/op");
+        for(int round = 1; round <= ROUNDS; round++){
+            boolean report = (round == ROUNDS);
+            AVLGTree<Integer> boxedInts = new AVLGTree<>(maxImbalance);
+            run("AVLGTree<Integer>", report, n, new Subject() {
+                public void insert(int i) { boxedInts.insert(ints[i]); }
+                public boolean search(int i) throws EmptyTreeException { return boxedInts.search(ints[i]) != null; }
+                public void delete(int i) throws EmptyTreeException { boxedInts.delete(ints[i]); }
+            });
+            IntAVLGTree primitiveInts = new IntAVLGTree(maxImbalance);
+            run("IntAVLGTree", report, n, new Subject() {
+                public void insert(int i) { primitiveInts.insert(ints[i]); }
+                public boolean search(int i) throws EmptyTreeException { return primitiveInts.search(ints[i]); }
+                public void delete(int i) throws EmptyTreeException { primitiveInts.delete(ints[i]); }
+            });
+            AVLGTree<Long> boxedLongs = new AVLGTree<>(maxImbalance);
+            run("AVLGTree<Long>", report, n, new Subject() {
+                public void insert(int i) { boxedLongs.insert(longs[i]); }
+                public boolean search(int i) throws EmptyTreeException { return boxedLongs.search(longs[i]) != null; }
+                public void delete(int i) throws EmptyTreeException { boxedLongs.delete(longs[i]); }
+            });
+            LongAVLGTree primitiveLongs = new LongAVLGTree(maxImbalance);
+            run("LongAVLGTree", report, n, new Subject() {
+                public void insert(int i) { primitiveLongs.insert(longs[i]); }
+                public boolean search(int i) throws EmptyTreeException { return primitiveLongs.search(longs[i]); }
+                public void delete(int i) throws EmptyTreeException { primitiveLongs.delete(longs[i]); }
+            });
+        }
+        if(sink == 42)
+            System.out.println();
+    }
+
+    private static void run(String name, boolean report, int n, Subject subject) throws EmptyTreeException {
+        long start = System.nanoTime();
+        for(int i = 0; i < n; i++)
+            subject.insert(i);
+        double insertCost = (System.nanoTime() - start) / (double)n;
+
+        start = System.nanoTime();
+        for(int i = 0; i < n; i++)
+            if(subject.search(i))
+                sink++;
+        double searchCost = (System.nanoTime() - start) / (double)n;
+
+        start = System.nanoTime();
+        for(int i = 0; i < n; i++)
+            subject.delete(i);
+        double deleteCost = (System.nanoTime() - start) / (double)n;
+
+        if(report)
+            System.out.printf("%-24s %14.1f %14.1f %14.1f%n", name, insertCost, searchCost, deleteCost);
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.util.Random;
+
+/**
+ * <p>{@link SetOperationsBenchmark} compares the join-based {@link AVLGTree#union(AVLGTree)} and
+ * {@link AVLGTree#difference(AVLGTree)} against the obvious alternative of one {@link AVLGTree#insert(Comparable)}
+ * or {@link AVLGTree#delete(Comparable)} per key of the smaller tree. A master tree of (by default) 10<sup>6</sup>
+ * keys is merged with deltas of growing sizes, from 10<sup>2</sup> keys up to as many keys as the master tree. The
+ * join-based operations should win by a growing margin as the delta grows, and even more so on machines with several
+ * cores, where large set operations run in parallel.</p>
+ *
+ * <p>Run it as a Java application. The optional arguments are the size of the master tree and the imbalance
+ * parameter, e.g. {@code java benchmarks.SetOperationsBenchmark 1000000 1}.</p>
+ *
+ * @see AVLGTree#union(AVLGTree)
+ */
+public class SetOperationsBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int ROUNDS = 3; // Warm-up rounds plus the reported one.
+
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxImbalance = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Random r = new Random(SEED);
+        AVLGTree<Integer> master = new AVLGTree<>(maxImbalance);
+        for(int i = 0; i < n; i++)
+            master.insert(r.nextInt());
+
+        System.out.println("AVL-" + maxImbalance + " master tree of " + n + " keys.");
+        System.out.printf("%12s %14s %14s %14s %14s%n", "delta keys", "inserts ms", "union ms", "deletes ms", "difference ms");
+        for(int m = 100; m <= n; m *= 10){
+            AVLGTree<Integer> delta = new AVLGTree<>(maxImbalance);
+            for(int i = 0; i < m; i++)
+                delta.insert(r.nextInt());
+            double[] millis = new double[4];
+            for(int round = 0; round < ROUNDS; round++){
+                /* Every measurement starts from a fresh copy of the master tree. */
+                AVLGTree<Integer> copy = copyOf(master, maxImbalance);
+                long start = System.nanoTime();
+                for(Integer key : delta)
+                    if(copy.search(key) == null)
+                        copy.insert(key);
+                millis[0] = (System.nanoTime() - start) / 1e6;
+
+                copy = copyOf(master, maxImbalance);
+                start = System.nanoTime();
+                copy.union(delta);
+                millis[1] = (System.nanoTime() - start) / 1e6;
+
+                copy = copyOf(master, maxImbalance);
+                start = System.nanoTime();
+                for(Integer key : delta)
+                    copy.delete(key);
+                millis[2] = (System.nanoTime() - start) / 1e6;
+
+                copy = copyOf(master, maxImbalance);
+                start = System.nanoTime();
+                copy.difference(delta);
+                millis[3] = (System.nanoTime() - start) / 1e6;
+            }
+            System.out.printf("%12d %14.1f %14.1f %14.1f %14.1f%n", m, millis[0], millis[1], millis[2], millis[3]);
+        }
+    }
+
+    /* An O(1) writable copy: the copy shares the nodes of tree, and copies the ones it changes. */
+    private static AVLGTree<Integer> copyOf(AVLGTree<Integer> tree, int maxImbalance) throws InvalidBalanceException {
+        AVLGTree<Integer> copy = new AVLGTree<>(maxImbalance);
+        copy.union(tree);
+        return copy;
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import avlg.AVLGTree;
+import avlg.KeyCodec;
+import avlg.exceptions.EmptyTreeException;
+import avlg.exceptions.InvalidBalanceException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * <p>{@link SnapshotFileBenchmark} measures what {@link AVLGTree#writeTo(Path, KeyCodec)} and
+ * {@link AVLGTree#readFrom(Path, KeyCodec)} save when a service restarts: it builds a tree of (by default)
+ * 2 &times; 10<sup>7</sup> random integer keys by insertion, which is what a restart costs without a snapshot, then
+ * writes the tree to a file and reads it back, and reports the duration of all three along with the size of the
+ * file.</p>
+ *
+ * <p>Run it as a Java application with enough heap for the tree, e.g.
+ * {@code java -Xmx8g benchmarks.SnapshotFileBenchmark 20000000 1}. The snapshot file goes to the temporary directory,
+ * and is deleted at the end.</p>
+ *
+ * @see AVLGTree#writeTo(Path, KeyCodec)
+ */
+public class SnapshotFileBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+
+    public static void main(String[] args) throws InvalidBalanceException, EmptyTreeException, IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        int maxImbalance = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Random r = new Random(SEED);
+        Path file = Files.createTempFile("avlg", ".snapshot");
+        try {
+            long start = System.nanoTime();
+            AVLGTree<Integer> tree = new AVLGTree<>(maxImbalance);
+            for(int i = 0; i < n; i++)
+                tree.insert(r.nextInt());
+            double insertMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            tree.writeTo(file, KeyCodec.INTEGER);
+            double writeMillis = (System.nanoTime() - start) / 1e6;
+            int height = tree.getHeight();
+            tree = null; // Only the restored tree is alive while it is being read.
+
+            start = System.nanoTime();
+            AVLGTree<Integer> restored = AVLGTree.readFrom(file, KeyCodec.INTEGER);
+            double readMillis = (System.nanoTime() - start) / 1e6;
+            if(restored.getHeight() != height)
+                throw new AssertionError("The restored tree does not have the shape of the original one.");
+
+            System.out.println("AVL-" + maxImbalance + " tree of " + restored.getCount() + " keys, snapshot of "
+                    + Files.size(file) / 1048576 + " MB.");
+            System.out.printf("%14s %14s %14s%n", "inserts ms", "writeTo ms", "readFrom ms");
+            System.out.printf("%14.1f %14.1f %14.1f%n", insertMillis, writeMillis, readMillis);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package benchmarks;
+
+import spatial.kdpoint.KDPoint;
+import spatial.knnutils.BoundedPriorityQueue;
+import spatial.trees.KDTree;
+import spatial.trees.SpatialQuerySolver;
+import spatial.trees.StaticKDTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>{@link BatchKNNBenchmark} measures the batched k-nearest-neighbor queries of {@link KDTree} and
+ * {@link StaticKDTree} against a plain loop of single queries. Both trees hold the same (by default) 10<sup>6</sup>
+ * random 2-dimensional points, and answer {@value #QUERIES} scattered queries three ways: one at a time on the calling
+ * thread, as a batch in the given order, and as a batch in Morton order. All three keep every result, and start from
+ * a collected heap.</p>
+ *
+ * <p>Run it as a Java application, e.g. {@code java -Xmx4g benchmarks.BatchKNNBenchmark 1000000 8}.</p>
+ *
+ * @see KDTree#kNearestNeighbors(int, KDPoint[], boolean)
+ * @see StaticKDTree#kNearestNeighbors(int, KDPoint[], boolean)
+ */
+public class BatchKNNBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int QUERIES = 200_000;
+    private static final int BOUND = 1 << 24; // Coordinates are drawn from [0, BOUND).
+    private static final int ROUNDS = 3; // Warm-up rounds plus the reported one.
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        Random r = new Random(SEED);
+        List<KDPoint> points = new ArrayList<>(n);
+        for(int i = 0; i < n; i++)
+            points.add(new KDPoint(r.nextInt(BOUND), r.nextInt(BOUND)));
+        KDPoint[] queries = new KDPoint[QUERIES];
+        for(int i = 0; i < QUERIES; i++)
+            queries[i] = new KDPoint(r.nextInt(BOUND), r.nextInt(BOUND));
+        KDTree tree = KDTree.build(2, points);
+        StaticKDTree staticTree = new StaticKDTree(2, points);
+        points = null; // Keeps the input list out of the picture.
+
+        System.out.println(n + " points, " + k + " neighbors per query, "
+                + Runtime.getRuntime().availableProcessors() + " cores.");
+        System.out.printf("%-14s %14s %14s %14s%n", "tree", "loop q/s", "batch q/s", "morton q/s");
+        double loop = 0, batch = 0, morton = 0;
+        for(int round = 0; round < ROUNDS; round++){
+            loop = loop(tree, k, queries);
+            batch = batch(tree, k, queries, false);
+            morton = batch(tree, k, queries, true);
+        }
+        System.out.printf("%-14s %14.0f %14.0f %14.0f%n", "KDTree", loop, batch, morton);
+        for(int round = 0; round < ROUNDS; round++){
+            loop = loop(staticTree, k, queries);
+            batch = batch(staticTree, k, queries, false);
+            morton = batch(staticTree, k, queries, true);
+        }
+        System.out.printf("%-14s %14.0f %14.0f %14.0f%n", "StaticKDTree", loop, batch, morton);
+    }
+
+    /* The loop keeps its results, as the batch has to, so that both allocate and retain the same. */
+    private static double loop(SpatialQuerySolver solver, int k, KDPoint[] queries) {
+        System.gc(); // Leaves no garbage of the previous measurement behind.
+        long start = System.nanoTime();
+        List<BoundedPriorityQueue<KDPoint>> results = new ArrayList<>(queries.length);
+        for(KDPoint query : queries)
+            results.add(solver.kNearestNeighbors(k, query));
+        return rate(start);
+    }
+
+    private static double batch(SpatialQuerySolver solver, int k, KDPoint[] queries, boolean mortonOrder) {
+        System.gc();
+        long start = System.nanoTime();
+        if(solver instanceof KDTree)
+            ((KDTree) solver).kNearestNeighbors(k, queries, mortonOrder);
+        else
+            ((StaticKDTree) solver).kNearestNeighbors(k, queries, mortonOrder);
+        return rate(start);
+    }
+
+    private static double rate(long start) {
+        return QUERIES / ((System.nanoTime() - start) / 1e9);
+    }
+}
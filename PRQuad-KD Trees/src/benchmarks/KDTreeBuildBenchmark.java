@@ -0,0 +1,61 @@
+package benchmarks;
+
+import spatial.kdpoint.KDPoint;
+import spatial.trees.KDTree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>{@link KDTreeBuildBenchmark} compares loading (by default) 10<sup>6</sup> 2-dimensional points into a
+ * {@link KDTree} one {@link KDTree#insert(KDPoint)} at a time against bulk-loading them with
+ * {@link KDTree#build(int, java.util.Collection)}, and reports the time taken and the height of the resulting tree.
+ * The points come either in random order or sorted, like a GPS feed. Sorted points are only bulk-loaded: inserting
+ * them one by one makes a list-like tree, which takes quadratic time and whose recursive insertions overflow the
+ * stack long before a million points.</p>
+ *
+ * <p>Run it as a Java application, e.g. {@code java -Xmx4g benchmarks.KDTreeBuildBenchmark 1000000}.</p>
+ *
+ * @see KDTree#build(int, java.util.Collection)
+ */
+public class KDTreeBuildBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int BOUND = 1 << 24; // Coordinates are drawn from [0, BOUND).
+    private static final int ROUNDS = 3; // Warm-up rounds plus the reported one.
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random r = new Random(SEED);
+        List<KDPoint> random = new ArrayList<>(n);
+        for(int i = 0; i < n; i++)
+            random.add(new KDPoint(r.nextInt(BOUND), r.nextInt(BOUND)));
+        List<KDPoint> sorted = new ArrayList<>(random);
+        sorted.sort(Comparator.comparingInt(p -> p.coords[0]));
+
+        System.out.println(n + " points.");
+        System.out.printf("%-8s %-8s %12s %8s%n", "input", "method", "ms", "height");
+        for(int round = 0; round < ROUNDS; round++){
+            boolean report = round == ROUNDS - 1;
+            long start = System.nanoTime();
+            KDTree tree = new KDTree(2);
+            for(KDPoint p : random)
+                tree.insert(p);
+            print(report, "random", "insert", start, tree);
+
+            start = System.nanoTime();
+            print(report, "random", "build", start, KDTree.build(2, random));
+
+            start = System.nanoTime();
+            print(report, "sorted", "build", start, KDTree.build(2, sorted));
+        }
+    }
+
+    private static void print(boolean report, String input, String method, long start, KDTree tree) {
+        double millis = (System.nanoTime() - start) / 1e6;
+        if(report)
+            System.out.printf("%-8s %-8s %12.1f %8d%n", input, method, millis, tree.height());
+    }
+}
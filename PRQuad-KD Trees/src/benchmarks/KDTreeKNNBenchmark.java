@@ -0,0 +1,71 @@
+package benchmarks;
+
+import spatial.kdpoint.KDPoint;
+import spatial.trees.KDTree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>{@link KDTreeKNNBenchmark} measures how much of a {@link KDTree} a k-nearest-neighbor query visits. For trees
+ * of 10<sup>4</sup> up to 10<sup>7</sup> uniformly random 2-dimensional points (by default), it runs a batch of
+ * queries around random anchors and reports the average number of nodes visited per query, which an exhaustive
+ * scan would put at n, along with the throughput of the queries.</p>
+ *
+ * <p>Visited nodes are counted through the distance computations that the search performs, one per node, by storing
+ * points of a {@link KDPoint} subclass which counts calls to {@link KDPoint#euclideanDistance(KDPoint)}. Run it as a
+ * Java application with enough heap for the largest tree, e.g.
+ * {@code java -Xmx4g benchmarks.KDTreeKNNBenchmark 10000,100000,1000000,10000000 8}.</p>
+ *
+ * @see KDTree#kNearestNeighbors(int, KDPoint)
+ */
+public class KDTreeKNNBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int QUERIES = 10_000;
+    private static final int BOUND = 1 << 20; // Coordinates are drawn from [0, BOUND).
+
+    private static long distances;
+
+    /* A point which counts the distances computed from it, i.e. the visits of its node. */
+    private static class CountingPoint extends KDPoint {
+        private CountingPoint(int... coords) {
+            super(coords);
+        }
+
+        @Override
+        public double euclideanDistance(KDPoint p) {
+            distances++;
+            return super.euclideanDistance(p);
+        }
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = parse(args.length > 0 ? args[0] : "10000,100000,1000000,10000000");
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        Random r = new Random(SEED);
+
+        System.out.printf("%10s %4s %16s %14s%n", "points", "k", "nodes/query", "queries/s");
+        for(int n : sizes){
+            KDTree tree = new KDTree(2);
+            for(int i = 0; i < n; i++)
+                tree.insert(new CountingPoint(r.nextInt(BOUND), r.nextInt(BOUND)));
+            KDPoint[] anchors = new KDPoint[QUERIES];
+            for(int i = 0; i < QUERIES; i++)
+                anchors[i] = new KDPoint(r.nextInt(BOUND), r.nextInt(BOUND));
+            for(KDPoint anchor : anchors) // Warm-up.
+                tree.kNearestNeighbors(k, anchor);
+
+            distances = 0;
+            long start = System.nanoTime();
+            for(KDPoint anchor : anchors)
+                tree.kNearestNeighbors(k, anchor);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%10d %4d %16.1f %14.0f%n", n, k, distances / (double)QUERIES, QUERIES / seconds);
+        }
+    }
+
+    private static int[] parse(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+}
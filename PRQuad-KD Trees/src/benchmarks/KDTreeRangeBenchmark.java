@@ -0,0 +1,78 @@
+package benchmarks;
+
+import spatial.kdpoint.KDPoint;
+import spatial.trees.KDTree;
+
+import java.util.Random;
+
+/**
+ * <p>{@link KDTreeRangeBenchmark} compares the plane-pruned {@link KDTree#range(KDPoint, double)} against the
+ * box-pruned {@link KDTree#boxedRange(KDPoint, double)} on a tree of (by default) 10<sup>6</sup> uniformly random
+ * 2-dimensional points, for radii covering from a handful of points up to a sizable share of the tree. For each
+ * radius, it reports the average number of points returned and of distances computed per query, and the throughput
+ * of both variants.</p>
+ *
+ * <p>Distances are counted as in {@link KDTreeKNNBenchmark}. Run it as a Java application, e.g.
+ * {@code java -Xmx2g benchmarks.KDTreeRangeBenchmark 1000000}.</p>
+ *
+ * @see KDTree#boxedRange(KDPoint, double)
+ */
+public class KDTreeRangeBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int QUERIES = 1_000;
+    private static final int BOUND = 1 << 20; // Coordinates are drawn from [0, BOUND).
+    private static final double[] RADII = {BOUND / 1024.0, BOUND / 128.0, BOUND / 16.0, BOUND / 4.0};
+
+    private static long distances;
+
+    /* A point which counts the distances computed from it. */
+    private static class CountingPoint extends KDPoint {
+        private CountingPoint(int... coords) {
+            super(coords);
+        }
+
+        @Override
+        public double euclideanDistance(KDPoint p) {
+            distances++;
+            return super.euclideanDistance(p);
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random r = new Random(SEED);
+        KDTree tree = new KDTree(2);
+        for(int i = 0; i < n; i++)
+            tree.insert(new CountingPoint(r.nextInt(BOUND), r.nextInt(BOUND)));
+        KDPoint[] anchors = new KDPoint[QUERIES];
+        for(int i = 0; i < QUERIES; i++)
+            anchors[i] = new KDPoint(r.nextInt(BOUND), r.nextInt(BOUND));
+
+        System.out.println(n + " points.");
+        System.out.printf("%10s %12s %16s %16s %14s %14s%n", "radius", "points", "range dists", "boxed dists",
+                "range q/s", "boxed q/s");
+        for(double radius : RADII){
+            long found = 0;
+            double[] rates = new double[2];
+            long[] counts = new long[2];
+            for(int variant = 0; variant < 2; variant++){
+                for(KDPoint anchor : anchors) // Warm-up.
+                    query(tree, anchor, radius, variant);
+                distances = 0;
+                found = 0;
+                long start = System.nanoTime();
+                for(KDPoint anchor : anchors)
+                    found += query(tree, anchor, radius, variant);
+                rates[variant] = QUERIES / ((System.nanoTime() - start) / 1e9);
+                counts[variant] = distances;
+            }
+            System.out.printf("%10.0f %12.1f %16.1f %16.1f %14.0f %14.0f%n", radius, found / (double)QUERIES,
+                    counts[0] / (double)QUERIES, counts[1] / (double)QUERIES, rates[0], rates[1]);
+        }
+    }
+
+    private static int query(KDTree tree, KDPoint anchor, double radius, int variant) {
+        return (variant == 0 ? tree.range(anchor, radius) : tree.boxedRange(anchor, radius)).size();
+    }
+}
@@ -0,0 +1,55 @@
+package benchmarks;
+
+import spatial.kdpoint.KDPoint;
+import spatial.trees.KDTree;
+import spatial.trees.SpatialQuerySolver;
+import spatial.trees.StaticKDTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>{@link StaticKDTreeBenchmark} compares the k-nearest-neighbor throughput of a {@link KDTree} against that of a
+ * {@link StaticKDTree} holding the same (by default) 10<sup>6</sup> random 2-dimensional points. Both trees are
+ * bulk-built, so they are equally balanced, and the difference comes down to the memory layout: nodes, points and
+ * coordinate arrays scattered over the heap, against one flat array of coordinates.</p>
+ *
+ * <p>Run it as a Java application, e.g. {@code java -Xmx4g benchmarks.StaticKDTreeBenchmark 1000000 8}.</p>
+ *
+ * @see StaticKDTree
+ */
+public class StaticKDTreeBenchmark {
+
+    private static final long SEED = 47; // Fixed seed, so that runs are comparable.
+    private static final int QUERIES = 100_000;
+    private static final int BOUND = 1 << 24; // Coordinates are drawn from [0, BOUND).
+    private static final int ROUNDS = 3; // Warm-up rounds plus the reported one.
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        Random r = new Random(SEED);
+        List<KDPoint> points = new ArrayList<>(n);
+        for(int i = 0; i < n; i++)
+            points.add(new KDPoint(r.nextInt(BOUND), r.nextInt(BOUND)));
+        KDPoint[] anchors = new KDPoint[QUERIES];
+        for(int i = 0; i < QUERIES; i++)
+            anchors[i] = new KDPoint(r.nextInt(BOUND), r.nextInt(BOUND));
+        SpatialQuerySolver[] solvers = {KDTree.build(2, points), new StaticKDTree(2, points)};
+        points = null; // Keeps the input list out of the picture.
+
+        System.out.println(n + " points, " + k + " neighbors per query.");
+        System.out.printf("%-14s %14s%n", "tree", "queries/s");
+        for(SpatialQuerySolver solver : solvers){
+            double rate = 0;
+            for(int round = 0; round < ROUNDS; round++){
+                long start = System.nanoTime();
+                for(KDPoint anchor : anchors)
+                    solver.kNearestNeighbors(k, anchor);
+                rate = QUERIES / ((System.nanoTime() - start) / 1e9);
+            }
+            System.out.printf("%-14s %14.0f%n", solver.getClass().getSimpleName(), rate);
+        }
+    }
+}
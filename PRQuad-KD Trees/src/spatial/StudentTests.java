@@ -9,6 +9,8 @@ import spatial.knnutils.BoundedPriorityQueue;
 import spatial.knnutils.NNData;
 import spatial.trees.KDTree;
 import spatial.trees.PRQuadTree;
+import spatial.trees.SpatialQuerySolver;
+import spatial.trees.StaticKDTree;
 import visualization.CompactVizTree;
 
 import java.util.*;
@@ -296,6 +298,185 @@ public class StudentTests {
 	     assertEquals(kdTree.kNearestNeighbors(1, new KDPoint(-30,260)).dequeue(), tempp.dequeue());
     }
 
+    @Test
+    public void testRangeMatchesBruteForce() {
+        r = new Random(SEED);
+        KDTree tree = new KDTree(2);
+        List<KDPoint> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            KDPoint p = getRandomPoint(2);
+            tree.insert(p);
+            points.add(p);
+        }
+        for (int i = 0; i < MAX_ITER; i++) {
+            KDPoint anchor = (i % 2 == 0) ? getRandomPoint(2) : points.get(r.nextInt(points.size()));
+            double range = r.nextInt(4 * BOUND) * r.nextDouble();
+            List<KDPoint> expected = new ArrayList<>();
+            for (KDPoint p : points) {
+                double dist = p.euclideanDistance(anchor);
+                if (dist <= range && dist != 0)
+                    expected.add(p);
+            }
+            Comparator<KDPoint> order = Comparator.comparingInt((KDPoint p) -> p.coords[0]).thenComparingInt(p -> p.coords[1]);
+            expected.sort(order);
+            List<KDPoint> pruned = new ArrayList<>(tree.range(anchor, range));
+            List<KDPoint> boxed = new ArrayList<>(tree.boxedRange(anchor, range));
+            pruned.sort(order);
+            boxed.sort(order);
+            assertEquals("The plane-pruned range query should return the same points as an exhaustive scan.", expected, pruned);
+            assertEquals("The box-pruned range query should return the same points as an exhaustive scan.", expected, boxed);
+        }
+    }
+
+    @Test
+    public void testBulkBuild() {
+        r = new Random(SEED);
+        List<KDPoint> sorted = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) // A sorted feed, which one-by-one insertion would turn into a list.
+            sorted.add(new KDPoint(i, i / 2));
+        KDTree tree = KDTree.build(2, sorted);
+        assertEquals(sorted.size(), tree.count());
+        assertTrue("A bulk-built tree should be balanced, but its height is " + tree.height(), tree.height() <= 15);
+        for (KDPoint p : sorted)
+            assertTrue("Every point should be found in a bulk-built tree.", tree.search(p));
+        assertFalse(tree.search(new KDPoint(-1, -1)));
+
+        List<KDPoint> random = new ArrayList<>(); // Plenty of shared coordinates, which may land on either side of medians.
+        for (int i = 0; i < 5_000; i++)
+            random.add(getRandomPoint(3));
+        KDTree bulk = KDTree.build(3, random), incremental = new KDTree(3);
+        for (KDPoint p : random)
+            incremental.insert(p);
+        for (KDPoint p : random)
+            assertTrue(bulk.search(p));
+        for (int i = 0; i < MAX_ITER; i++) {
+            KDPoint anchor = getRandomPoint(3);
+            assertEquals(new HashSet<>(incremental.range(anchor, BOUND / 4.0)), new HashSet<>(bulk.range(anchor, BOUND / 4.0)));
+            assertEquals(incremental.kNearestNeighbors(1, anchor).dequeue().euclideanDistance(anchor),
+                    bulk.kNearestNeighbors(1, anchor).dequeue().euclideanDistance(anchor), 0);
+        }
+        assertTrue(KDTree.build(2, new ArrayList<>()).isEmpty());
+
+        List<KDPoint> repeated = new ArrayList<>(); // Only three distinct points, so nearly every median is tied.
+        for (int i = 0; i < 200_000; i++)
+            repeated.add(new KDPoint(5, i % 3));
+        tree = KDTree.build(2, repeated);
+        assertTrue("Ties should not unbalance a bulk-built tree, but its height is " + tree.height(), tree.height() <= 17);
+        for (int y = 0; y < 3; y++)
+            assertTrue(tree.search(new KDPoint(5, y)));
+        assertFalse(tree.search(new KDPoint(5, 3)));
+        assertFalse(tree.search(new KDPoint(4, 1)));
+        assertEquals(2, tree.kNearestNeighbors(2, new KDPoint(5, 1)).size());
+        List<KDPoint> same = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++)
+            same.add(new KDPoint(7, 7));
+        tree = KDTree.build(2, same);
+        assertEquals(same.size(), tree.count());
+        assertTrue("Copies of one point should not unbalance a bulk-built tree either.", tree.height() <= 16);
+        assertTrue(tree.search(new KDPoint(7, 7)));
+    }
+
+    @Test
+    public void testStaticKDTreeMatchesKDTree() {
+        r = new Random(SEED);
+        List<KDPoint> points = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+            points.add(getRandomPoint(2));
+        KDTree tree = KDTree.build(2, points);
+        StaticKDTree staticTree = new StaticKDTree(2, points);
+        assertEquals(points.size(), staticTree.count());
+        assertEquals(13, staticTree.height());
+        for (SpatialQuerySolver solver : new SpatialQuerySolver[]{tree, staticTree}) { // Query code sees no difference.
+            assertNotNull(solver.nearestNeighbor(new KDPoint(0, 0)));
+        }
+        for (int i = 0; i < MAX_ITER; i++) {
+            KDPoint anchor = (i % 2 == 0) ? getRandomPoint(2) : points.get(r.nextInt(points.size()));
+            double range = r.nextInt(BOUND / 4) * r.nextDouble();
+            assertEquals(new HashSet<>(tree.range(anchor, range)), new HashSet<>(staticTree.range(anchor, range)));
+            assertEquals(tree.range(anchor, range).size(), staticTree.range(anchor, range).size());
+            assertEquals(tree.nearestNeighbor(anchor).euclideanDistance(anchor),
+                    staticTree.nearestNeighbor(anchor).euclideanDistance(anchor), 0);
+            int k = 1 + r.nextInt(15);
+            BoundedPriorityQueue<KDPoint> expected = tree.kNearestNeighbors(k, anchor), actual = staticTree.kNearestNeighbors(k, anchor);
+            assertEquals(expected.size(), actual.size());
+            while (!expected.isEmpty())
+                assertEquals(expected.dequeue().euclideanDistance(anchor), actual.dequeue().euclideanDistance(anchor), 0);
+        }
+        StaticKDTree empty = new StaticKDTree(2, new ArrayList<>());
+        assertTrue(empty.isEmpty());
+        assertNull(empty.nearestNeighbor(new KDPoint(0, 0)));
+        assertTrue(empty.range(new KDPoint(0, 0), 10).isEmpty());
+    }
+
+    @Test
+    public void testBatchKNNMatchesSingleQueries() {
+        r = new Random(SEED);
+        List<KDPoint> points = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            points.add(getRandomPoint(3));
+        KDTree tree = KDTree.build(3, points);
+        StaticKDTree staticTree = new StaticKDTree(3, points);
+        KDPoint[] queries = new KDPoint[2000]; // Enough for several chunks.
+        for (int i = 0; i < queries.length; i++)
+            queries[i] = (i % 2 == 0) ? getRandomPoint(3) : points.get(r.nextInt(points.size()));
+        int k = 1 + r.nextInt(15);
+        for (boolean mortonOrder : new boolean[]{false, true}) {
+            List<BoundedPriorityQueue<KDPoint>> batch = tree.kNearestNeighbors(k, queries, mortonOrder),
+                    staticBatch = staticTree.kNearestNeighbors(k, queries, mortonOrder);
+            assertEquals(queries.length, batch.size());
+            assertEquals(queries.length, staticBatch.size());
+            for (int i = 0; i < queries.length; i++) { // Results come back in the order of the queries.
+                BoundedPriorityQueue<KDPoint> expected = tree.kNearestNeighbors(k, queries[i]),
+                        actual = batch.get(i), staticActual = staticBatch.get(i);
+                assertEquals(expected.size(), actual.size());
+                assertEquals(expected.size(), staticActual.size());
+                while (!expected.isEmpty()) {
+                    double dist = expected.dequeue().euclideanDistance(queries[i]);
+                    assertEquals(dist, actual.dequeue().euclideanDistance(queries[i]), 0);
+                    assertEquals(dist, staticActual.dequeue().euclideanDistance(queries[i]), 0);
+                }
+            }
+        }
+        assertTrue(staticTree.kNearestNeighbors(k, new KDPoint[0], true).isEmpty());
+        try {
+            tree.kNearestNeighbors(0, queries, false);
+            fail("A batch with k = 0 should have thrown.");
+        } catch (RuntimeException ignored) {
+        }
+        try {
+            staticTree.kNearestNeighbors(-1, queries, true);
+            fail("A batch with k = -1 should have thrown.");
+        } catch (RuntimeException ignored) {
+        }
+    }
+
+    @Test
+    public void testKNNMatchesBruteForce() {
+        r = new Random(SEED);
+        KDTree tree = new KDTree(3);
+        List<KDPoint> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            KDPoint p = getRandomPoint(3);
+            tree.insert(p);
+            points.add(p);
+        }
+        for (int i = 0; i < MAX_ITER; i++) {
+            KDPoint anchor = (i % 2 == 0) ? getRandomPoint(3) : points.get(r.nextInt(points.size()));
+            int k = 1 + r.nextInt(15);
+            List<Double> expected = new ArrayList<>();
+            for (KDPoint p : points)
+                if (!p.equals(anchor))
+                    expected.add(p.euclideanDistance(anchor));
+            Collections.sort(expected);
+            List<Double> actual = new ArrayList<>();
+            BoundedPriorityQueue<KDPoint> queue = tree.kNearestNeighbors(k, anchor);
+            while (!queue.isEmpty())
+                actual.add(queue.dequeue().euclideanDistance(anchor));
+            assertEquals("The pruned kNN search should find neighbors as close as those of an exhaustive scan.",
+                    expected.subList(0, k), actual);
+        }
+    }
+
 
     /* ******************************************************************************************************** */
     /* ******************************************************************************************************** */
@@ -29,6 +29,7 @@ public class BoundedPriorityQueue<T> implements PriorityQueue<T>{
 	private int size;
 	private int count;
 	private Node<T> root;
+	private Node<T> tail; /*the maximum priority node, so that branch-and-bound searches can read its priority in O(1)*/
 	private int sync;
 	
 	private static class Node<T>{
@@ -76,6 +77,7 @@ public class BoundedPriorityQueue<T> implements PriorityQueue<T>{
 			root = new Node<T>();
 			root.data = element;
 			root.priority = priority;
+			tail = root;
 			count++;
 		}else {
 			Node<T> curr = root, prev = null;
@@ -91,6 +93,8 @@ public class BoundedPriorityQueue<T> implements PriorityQueue<T>{
 				prev.next = temp;
 				temp.next = curr;
 			}
+			if(temp.next == null)
+				tail = temp;
 			count++;
 			if(count > size) {
 				curr = root;
@@ -100,6 +104,7 @@ public class BoundedPriorityQueue<T> implements PriorityQueue<T>{
 					curr = curr.next;
 				}
 				prev.next = null;
+				tail = prev;
 				count--;
 			}
 		}
@@ -113,6 +118,8 @@ public class BoundedPriorityQueue<T> implements PriorityQueue<T>{
 		}
 		Node<T> temp = root;
 		root = root.next;
+		if(root == null)
+			tail = null;
 		count--;
 		sync++;
 		return temp.data;
@@ -147,6 +154,15 @@ public class BoundedPriorityQueue<T> implements PriorityQueue<T>{
 		}
 	}
 
+	/**
+	 * Returns the priority of {@link #last()}. A k-nearest-neighbor search compares it against the distance to a
+	 * splitting plane to decide whether a subtree is worth visiting, so it takes constant time.
+	 * @return The maximum priority in our queue, or {@link Double#POSITIVE_INFINITY} if the queue is empty.
+	 */
+	public double lastPriority() {
+		return isEmpty() ? Double.POSITIVE_INFINITY : tail.priority;
+	}
+
 	/**
 	 * Inspects whether a given element is in the queue. O(N) complexity.
 	 * @param element The element to search for.
@@ -6,8 +6,11 @@ import spatial.knnutils.BoundedPriorityQueue;
 import spatial.knnutils.NNData;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * <p>{@link KDTreeNode} is an abstraction over nodes of a KD-Tree. It is used extensively by
@@ -65,6 +68,89 @@ public class KDTreeNode {
     	}
     }
     
+    /*subtrees with fewer points than this are not worth forking*/
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /*
+     * Builds the subtree of points[from, to), whose level splits on currDim: the median on currDim becomes the root,
+     * the points before it in the selection go left and the ones after it go right. Points equal to the median may
+     * land on either side, which search() allows for, so that every level halves its points however many of them
+     * share a coordinate. The two halves are built in parallel when they are large enough.
+     */
+    private static class Builder extends RecursiveTask<KDTreeNode> {
+    	private final KDPoint[] points;
+    	private final int from, to, currDim, dims;
+
+    	private Builder(KDPoint[] points, int from, int to, int currDim, int dims) {
+    		this.points = points;
+    		this.from = from;
+    		this.to = to;
+    		this.currDim = currDim;
+    		this.dims = dims;
+    	}
+
+    	@Override
+    	protected KDTreeNode compute() {
+    		if(from == to) {
+    			return null;
+    		}
+    		int mid = (from + to) >>> 1;
+    		select(points, from, to, mid, currDim);
+    		KDTreeNode node = new KDTreeNode(points[mid]);
+    		int nextDim = (currDim+1)%dims;
+    		Builder left = new Builder(points, from, mid, nextDim, dims);
+    		Builder right = new Builder(points, mid + 1, to, nextDim, dims);
+    		if(to - from >= PARALLEL_THRESHOLD) {
+    			left.fork();
+    			node.right = right.compute();
+    			node.left = left.join();
+    		}else {
+    			node.left = left.compute();
+    			node.right = right.compute();
+    		}
+    		node.height = 1 + Math.max(node.left == null ? -1 : node.left.height, node.right == null ? -1 : node.right.height);
+    		return node;
+    	}
+    }
+
+    /*
+     * Quickselect with a three-way partition on dim: rearranges points[from, to) so that points[k] holds the k-th
+     * smallest coordinate, with no larger one before it and no smaller one after it. Expected O(to - from) time.
+     */
+    private static void select(KDPoint[] points, int from, int to, int k, int dim) {
+    	int lo = from, hi = to;
+    	while(true) {
+    		int a = points[lo].coords[dim], b = points[(lo + hi) >>> 1].coords[dim], c = points[hi - 1].coords[dim];
+    		int pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c)); // Median of three.
+    		/*points[lo, lt) < pivot, points[lt, i) == pivot, points[gt, hi) > pivot*/
+    		int lt = lo, i = lo, gt = hi;
+    		while(i < gt) {
+    			int value = points[i].coords[dim];
+    			if(value < pivot) {
+    				swap(points, lt++, i++);
+    			}else if(value > pivot) {
+    				swap(points, i, --gt);
+    			}else {
+    				i++;
+    			}
+    		}
+    		if(k < lt) {
+    			hi = lt;
+    		}else if(k >= gt) {
+    			lo = gt;
+    		}else {
+    			/*points[k] is a pivot, and every point discarded so far is strictly below or above the pivots*/
+    			return;
+    		}
+    	}
+    }
+
+    private static void swap(KDPoint[] points, int i, int j) {
+    	KDPoint temp = points[i];
+    	points[i] = points[j];
+    	points[j] = temp;
+    }
+
     private int height(KDTreeNode node) {
     	if(node == null) {
     		return 0;
@@ -98,6 +184,24 @@ public class KDTreeNode {
     	this.right = null;
     }
 
+    /**
+     * <p>Builds a balanced KD-Tree out of points in O(n log n) time, instead of inserting them one by one, which
+     * can degenerate into a list when the points come in sorted order. Every node splits its subtree at the median
+     * of its level's dimension, cycling through the dimensions from currDim down. Points equal to a median may end up
+     * on either side of it, so the height is at most floor(log<sub>2</sub>(n)) even when many points share a
+     * coordinate, or are all the same point. Medians are found with quickselect, and large subtrees are built in
+     * parallel on the common {@link ForkJoinPool}.</p>
+     * @param points The {@link KDPoint}s to store, which are reordered in place. The nodes hold these very
+     *               {@link KDPoint}s, just like {@link #insert(KDPoint, int, int)} would.
+     * @param currDim The dimension that the root splits on.
+     * @param dims The total number of dimensions that the space considers.
+     * @return The root of the new tree, or {@code null} if there are no points.
+     */
+    public static KDTreeNode build(KDPoint[] points, int currDim, int dims){
+    	Builder builder = new Builder(points, 0, points.length, currDim, dims);
+    	return (points.length >= PARALLEL_THRESHOLD) ? ForkJoinPool.commonPool().invoke(builder) : builder.compute();
+    }
+
     /**
      * <p>Inserts the provided {@link KDPoint} in the tree rooted at this. To select which subtree to recurse to,
      * the KD-Tree acts as a Binary Search Tree on currDim; it will examine the value of the provided {@link KDPoint}
@@ -153,26 +257,35 @@ public class KDTreeNode {
      */
     
     public boolean search(KDPoint pIn, int currDim, int dims){
-    	if(this != null && this.p.equals(pIn)) {
-         	return true;
-        }else if(this != null && !this.p.equals(pIn)){
-        	KDTreeNode temp = this;
-        	while(temp != null && !temp.p.equals(pIn)) {
-        		if(temp.p.coords[currDim] <= pIn.coords[currDim]) {
-        			temp = temp.right;
-        		}else {
-        			temp = temp.left;
-        		}
-        		currDim = (currDim+1)%dims;
-        	}
-        	if(temp == null) {
-        		return false;
-        	}else {
-        		return true;
-        	}
-        }else {
-        	return false;
-        }
+    	/*insert() sends ties right, but build() may also leave points equal to a median on its left, so a tie has to
+    	 * look on both sides: the left subtrees still to be searched wait on a stack, along with their dimensions*/
+    	KDTreeNode[] pending = new KDTreeNode[16];
+    	int[] pendingDims = new int[16];
+    	int top = 0;
+    	KDTreeNode temp = this;
+    	while(true) {
+    		while(temp != null) {
+    			if(temp.p.equals(pIn)) {
+    				return true;
+    			}
+    			int plane = temp.p.coords[currDim], nextDim = (currDim+1)%dims;
+    			if(plane == pIn.coords[currDim] && temp.left != null) {
+    				if(top == pending.length) {
+    					pending = Arrays.copyOf(pending, 2 * top);
+    					pendingDims = Arrays.copyOf(pendingDims, 2 * top);
+    				}
+    				pending[top] = temp.left;
+    				pendingDims[top++] = nextDim;
+    			}
+    			temp = (plane <= pIn.coords[currDim]) ? temp.right : temp.left;
+    			currDim = nextDim;
+    		}
+    		if(top == 0) {
+    			return false;
+    		}
+    		temp = pending[--top];
+    		currDim = pendingDims[top];
+    	}
     }
 
     /**
@@ -195,34 +308,88 @@ public class KDTreeNode {
      */
     public void range(KDPoint anchor, Collection<KDPoint> results,
                       double range, int currDim , int dims){
-//    	KDTreeNode curr = this, parent = null;
-//        while(curr != null) {
-//        	double dist = curr.p.euclideanDistance(anchor);
-//        	/*exclude the anchor point itself*/
-//        	if(dist <= range && dist != 0) {
-//        		results.add(curr.p);
-//        	}
-//        	/*check for location of anchor node*/
-//        	if(curr.p.coords[currDim] <= anchor.coords[currDim]) {
-//        		parent = curr;
-//        		curr = curr.right;
-//        	}else {
-//        		parent = curr;
-//        		curr = curr.left;
-//        	}
-//        	currDim = (currDim+1)%dims;
-//        }
-    	if(this != null) {
-	    	double dist = this.p.euclideanDistance(anchor);
-	    	if(dist <= range && dist != 0) {
-	    		results.add(this.p);
-	    	}
-	    	if(left != null) {
-	    		left.range(anchor, results, range, currDim, dims);
-	    	}
-	    	if(right != null) {
-	    		right.range(anchor, results, range, currDim, dims);
-	    	}
+    	double dist = this.p.euclideanDistance(anchor);
+    	if(dist <= range && dist != 0) {
+    		results.add(this.p);
+    	}
+    	/*left holds the points on or below the splitting plane on currDim, right those on or above it: a child is only
+    	 * visited if the ball around the anchor reaches its half-space*/
+    	double planeDist = anchor.coords[currDim] - this.p.coords[currDim];
+    	int nextDim = (currDim+1)%dims;
+    	if(left != null && planeDist <= range) {
+    		left.range(anchor, results, range, nextDim, dims);
+    	}
+    	if(right != null && -planeDist <= range) {
+    		right.range(anchor, results, range, nextDim, dims);
+    	}
+    }
+
+    /**
+     * <p>Executes the same range query as {@link #range(KDPoint, Collection, double, int, int)}, but also keeps track
+     * of the cell of every subtree, i.e. the box that the splitting planes of its ancestors carve out of the space.
+     * A subtree whose cell lies entirely outside the ball around the anchor is skipped, even when no single plane
+     * excludes it, and a subtree whose cell lies entirely inside the ball is added to results wholesale, without
+     * computing a single distance (unless the cell contains the anchor, whose copies must still be left out).</p>
+     *
+     * @param anchor The centroid of the hypersphere that the range query implicitly creates.
+     * @param results A {@link Collection} that accumulates all the {@link KDPoint}s within range of the anchor.
+     * @param range The <b>INCLUSIVE</b> range from the anchor.
+     * @param currDim The current dimension examined by the {@link KDTreeNode}.
+     * @param dims The total number of dimensions of our {@link KDPoint}s.
+     * @param lo The lower corner of the cell of this node, one coordinate per dimension, possibly
+     *           {@link Double#NEGATIVE_INFINITY}. It is modified during the query and restored before returning.
+     * @param hi The upper corner of the cell of this node, possibly {@link Double#POSITIVE_INFINITY}. It is modified
+     *           during the query and restored before returning.
+     * @see #range(KDPoint, Collection, double, int, int)
+     */
+    public void boxedRange(KDPoint anchor, Collection<KDPoint> results, double range, int currDim, int dims,
+                           double[] lo, double[] hi){
+    	double nearest = 0, farthest = 0;
+    	for(int i = 0; i < dims; i++) {
+    		double a = anchor.coords[i];
+    		double gap = Math.max(0, Math.max(lo[i] - a, a - hi[i]));
+    		double reach = Math.max(a - lo[i], hi[i] - a);
+    		nearest += gap * gap;
+    		farthest += reach * reach;
+    	}
+    	/*every point of the cell is at least sqrt(nearest) and at most sqrt(farthest) away, as euclideanDistance computes it*/
+    	if(Math.sqrt(nearest) > range) {
+    		return;
+    	}
+    	if(Math.sqrt(farthest) <= range) {
+    		collect(anchor, results, nearest == 0);
+    		return;
+    	}
+    	double dist = this.p.euclideanDistance(anchor);
+    	if(dist <= range && dist != 0) {
+    		results.add(this.p);
+    	}
+    	double plane = this.p.coords[currDim];
+    	int nextDim = (currDim+1)%dims;
+    	if(left != null) {
+    		double saved = hi[currDim];
+    		hi[currDim] = plane;
+    		left.boxedRange(anchor, results, range, nextDim, dims, lo, hi);
+    		hi[currDim] = saved;
+    	}
+    	if(right != null) {
+    		double saved = lo[currDim];
+    		lo[currDim] = plane;
+    		right.boxedRange(anchor, results, range, nextDim, dims, lo, hi);
+    		lo[currDim] = saved;
+    	}
+    }
+
+    /*adds the whole subtree to results, leaving out the copies of the anchor if the subtree may hold any*/
+    private void collect(KDPoint anchor, Collection<KDPoint> results, boolean mayHoldAnchor) {
+    	if(!mayHoldAnchor || !this.p.equals(anchor)) {
+    		results.add(this.p);
+    	}
+    	if(left != null) {
+    		left.collect(anchor, results, mayHoldAnchor);
+    	}
+    	if(right != null) {
+    		right.collect(anchor, results, mayHoldAnchor);
     	}
     }
     
@@ -255,6 +422,7 @@ public class KDTreeNode {
     public NNData<KDPoint> nearestNeighbor(KDPoint anchor, int currDim,
                                             NNData<KDPoint> n, int dims){
     	KDTreeNode curr = this;
+    	int rootDim = currDim;
     	double min;
     	while(curr != null) {
     		min = curr.p.euclideanDistance(anchor);
@@ -271,7 +439,7 @@ public class KDTreeNode {
         	currDim = (currDim+1)%dims;
         }
     	ArrayList<KDPoint> list = new ArrayList<>();
-    	range(anchor, list, n.getBestDist(), currDim, dims);
+    	range(anchor, list, n.getBestDist(), rootDim, dims); // range() prunes on the dimension of this node.
     	for(int x = 0; x < list.size(); x++) {
     		double dist = list.get(x).euclideanDistance(anchor);
     		if(dist <= n.getBestDist() && dist > 0) {
@@ -311,17 +479,20 @@ public class KDTreeNode {
      * @see BoundedPriorityQueue
      */
     public void kNearestNeighbors(int k, KDPoint anchor, BoundedPriorityQueue<KDPoint> queue, int currDim, int dims){
-       	if(this != null) {
-	    	double dist = p.euclideanDistance(anchor);
-	    	if(!this.p.equals(anchor)) {
-	    		queue.enqueue(p, dist);
-	    	}
-	    	if(left != null) {
-	    		left.kNearestNeighbors(k, anchor, queue, currDim, dims);
-	    	}
-	    	if(right != null) {
-	    		right.kNearestNeighbors(k, anchor, queue, currDim, dims);
-	    	}
+    	if(!p.equals(anchor)) {
+    		queue.enqueue(p, p.euclideanDistance(anchor));
+    	}
+    	/*descend greedily on the anchor's side of the splitting plane, going right on a tie as insert() does*/
+    	double planeDist = anchor.coords[currDim] - p.coords[currDim];
+    	KDTreeNode near = (planeDist >= 0) ? right : left, far = (planeDist >= 0) ? left : right;
+    	int nextDim = (currDim+1)%dims;
+    	if(near != null) {
+    		near.kNearestNeighbors(k, anchor, queue, nextDim, dims);
+    	}
+    	/*bound: every point across the plane is at least |planeDist| away, so the far side only matters if that beats
+    	 * the current k-th best (ties included, since a point right on the plane may tie with the k-th best)*/
+    	if(far != null && (queue.size() < k || Math.abs(planeDist) <= queue.lastPriority())) {
+    		far.kNearestNeighbors(k, anchor, queue, nextDim, dims);
     	}
     }
 
@@ -6,8 +6,10 @@ import spatial.knnutils.NNData;
 import spatial.nodes.KDTreeNode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * <p>{@link KDTree} implements <em>K</em>-D Trees, where  <em>K</em> is a positive integer
@@ -101,6 +103,24 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 		count = 0;
 	}
 
+	/**
+	 * <p>Bulk-loads a new, balanced {@link KDTree} of k dimensions out of points. Instead of inserting the points one
+	 * by one, whose order decides the shape of the tree (sorted input makes it a list), the tree is built top-down,
+	 * every node splitting its subtree at the median of its level's dimension. This takes O(n log n) time, spread
+	 * over all cores for large inputs, and guarantees a height of at most floor(log<sub>2</sub>(n)), even for points
+	 * that share coordinates.</p>
+	 * @param k The dimensionality of the tree.
+	 * @param points The {@link KDPoint}s to store. The collection itself is left unchanged.
+	 * @return A new {@link KDTree} holding all of points.
+	 * @see KDTreeNode#build(KDPoint[], int, int)
+	 */
+	public static KDTree build(int k, Collection<KDPoint> points){
+		KDTree tree = new KDTree(k);
+		tree.root = KDTreeNode.build(points.toArray(new KDPoint[0]), 0, k);
+		tree.count = points.size();
+		return tree;
+	}
+
 	@Override
 	public void insert(KDPoint p){
 		if(root == null)
@@ -136,6 +156,27 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 		return pts;
 	}
 
+	/**
+	 * <p>Performs the same query as {@link #range(KDPoint, double)}, but prunes with the bounding box of every subtree
+	 * instead of a single splitting plane at a time: subtrees whose box lies outside the range are skipped, and
+	 * subtrees whose box lies inside it are returned wholesale, without any distance computations. This pays off for
+	 * large ranges, which cover many whole subtrees.</p>
+	 * @param p The anchor of the query.
+	 * @param range The <b>INCLUSIVE</b> range from p.
+	 * @return The {@link KDPoint}s within range of p, except p itself.
+	 * @see KDTreeNode#boxedRange(KDPoint, Collection, double, int, int, double[], double[])
+	 */
+	public Collection<KDPoint> boxedRange(KDPoint p, double range){
+		LinkedList<KDPoint> pts = new LinkedList<>();
+		if(root != null){
+			double[] lo = new double[dims], hi = new double[dims];
+			Arrays.fill(lo, Double.NEGATIVE_INFINITY);
+			Arrays.fill(hi, Double.POSITIVE_INFINITY);
+			root.boxedRange(p, pts, range, 0, dims, lo, hi);
+		}
+		return pts;
+	}
+
 	@Override
 	public KDPoint nearestNeighbor(KDPoint p){
 		NNData<KDPoint> n = new NNData<>(null, INFTY);
@@ -153,6 +194,24 @@ public class KDTree implements SpatialDictionary, SpatialQuerySolver {
 			root.kNearestNeighbors(k, p, queue, 0, dims);
 		return queue; // Might be empty; that's not a problem.
 	}
+
+	/**
+	 * <p>Runs a batch of k-nearest-neighbor queries in parallel chunks on all cores. The tree must not change while
+	 * the batch runs. For read-mostly serving, a {@link StaticKDTree} answers the same batches faster, and reuses its
+	 * search stacks across the queries of every thread.</p>
+	 * @param k A positive integer denoting the amount of neighbors to return per query.
+	 * @param queries The query points, which are left unchanged.
+	 * @param mortonOrder Whether to run the queries along a Morton (Z-order) curve, so that consecutive queries share
+	 *                    most of their nodes, rather than in the given order.
+	 * @return The k-nearest neighbors of every query point, in the order of queries, each as
+	 * {@link #kNearestNeighbors(int, KDPoint)} would return them.
+	 * @throws RuntimeException If k&lt;=0.
+	 */
+	public List<BoundedPriorityQueue<KDPoint>> kNearestNeighbors(int k, KDPoint[] queries, boolean mortonOrder){
+		if(k <= 0)
+			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		return KNNBatch.run(queries, mortonOrder, p -> kNearestNeighbors(k, p));
+	}
 	@Override
 	public int height(){
 		return root == null ? -1 : root.height();
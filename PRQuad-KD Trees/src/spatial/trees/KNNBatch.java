@@ -0,0 +1,108 @@
+package spatial.trees;
+
+import spatial.kdpoint.KDPoint;
+import spatial.knnutils.BoundedPriorityQueue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * <p>{@link KNNBatch} runs a batch of k-nearest-neighbor queries against an immutable tree on all cores, for the batch
+ * APIs of {@link KDTree} and {@link StaticKDTree}. The queries are split into chunks of {@value #CHUNK}, which run in
+ * parallel on the common {@link ForkJoinPool}. Optionally, the queries are first put in the order of a Morton
+ * (Z-order) space-filling curve, so that consecutive queries of a chunk have nearby anchors, and mostly walk the same,
+ * already cached, nodes.</p>
+ *
+ * @see KDTree#kNearestNeighbors(int, KDPoint[], boolean)
+ * @see StaticKDTree#kNearestNeighbors(int, KDPoint[], boolean)
+ */
+final class KNNBatch {
+
+	/* The number of queries per task: enough to amortize the forking, few enough to balance the load. */
+	private static final int CHUNK = 256;
+
+	private KNNBatch(){
+	}
+
+	/**
+	 * Runs query on every point of queries.
+	 * @param queries The anchors of the queries, which are left unchanged.
+	 * @param mortonOrder Whether to run the queries along a Morton curve rather than in the given order.
+	 * @param query A single k-nearest-neighbor query, which has to be safe to run from several threads at once.
+	 * @return The result of every query, in the order of queries.
+	 */
+	static List<BoundedPriorityQueue<KDPoint>> run(KDPoint[] queries, boolean mortonOrder,
+			Function<KDPoint, BoundedPriorityQueue<KDPoint>> query){
+		int n = queries.length;
+		int[] order = new int[n];
+		if(mortonOrder && n > 1){
+			/* One primitive sort: every query is the high bits of its key, followed by its index in the low bits. */
+			int indexBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+			long indexMask = (1L << indexBits) - 1;
+			long[] packed = new long[n];
+			for(int i = 0; i < n; i++) // Flipping the sign bit makes the signed order that of the unsigned keys.
+				packed[i] = ((mortonKey(queries[i]) & ~indexMask) | i) ^ Long.MIN_VALUE;
+			Arrays.parallelSort(packed);
+			for(int i = 0; i < n; i++)
+				order[i] = (int)(packed[i] & indexMask);
+		}else{
+			for(int i = 0; i < n; i++)
+				order[i] = i;
+		}
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		BoundedPriorityQueue<KDPoint>[] results = new BoundedPriorityQueue[n];
+		Chunk all = new Chunk(queries, order, results, 0, n, query);
+		if(n <= CHUNK || Runtime.getRuntime().availableProcessors() == 1)
+			all.compute(); // Nothing to share: the caller would only compete with the worker for the one core.
+		else
+			ForkJoinPool.commonPool().invoke(all);
+		return Arrays.asList(results);
+	}
+
+	/* Runs the queries at positions [from, to) of order, splitting into halves down to CHUNK queries. */
+	private static class Chunk extends RecursiveAction {
+		private final KDPoint[] queries;
+		private final int[] order;
+		private final BoundedPriorityQueue<KDPoint>[] results;
+		private final int from, to;
+		private final Function<KDPoint, BoundedPriorityQueue<KDPoint>> query;
+
+		private Chunk(KDPoint[] queries, int[] order, BoundedPriorityQueue<KDPoint>[] results, int from, int to,
+				Function<KDPoint, BoundedPriorityQueue<KDPoint>> query){
+			this.queries = queries;
+			this.order = order;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.query = query;
+		}
+
+		@Override
+		protected void compute(){
+			if(to - from <= CHUNK){
+				for(int i = from; i < to; i++){
+					int q = order[i];
+					results[q] = query.apply(queries[q]);
+				}
+			}else{
+				int mid = (from + to) >>> 1;
+				invokeAll(new Chunk(queries, order, results, from, mid, query),
+						new Chunk(queries, order, results, mid, to, query));
+			}
+		}
+	}
+
+	/* Interleaves the high bits of the coordinates, shifted so that unsigned order matches signed order. */
+	private static long mortonKey(KDPoint p){
+		int dims = p.coords.length;
+		int bits = Math.max(1, 64 / dims); // Bits kept per coordinate.
+		long key = 0;
+		for(int bit = 31; bit > 31 - bits && bit >= 0; bit--)
+			for(int d = 0; d < dims; d++)
+				key = (key << 1) | (((p.coords[d] ^ Integer.MIN_VALUE) >>> bit) & 1);
+		return key;
+	}
+}
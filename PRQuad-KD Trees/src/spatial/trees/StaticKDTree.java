@@ -0,0 +1,263 @@
+package spatial.trees;
+
+import spatial.kdpoint.KDPoint;
+import spatial.knnutils.BoundedPriorityQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>{@link StaticKDTree} is a read-only KD-Tree laid out for fast queries. Instead of {@link spatial.nodes.KDTreeNode}s,
+ * each of which points to a {@link KDPoint}, which points to its coordinates, all the coordinates live in a single
+ * flat {@code int[]}, node after node in breadth-first order: the node at index i has its children at 2i+1 and 2i+2,
+ * and the coordinates of its point at [i*k, (i+1)*k). A query walks that one array, with no pointers to chase, and only
+ * touches the {@link KDPoint}s themselves to return them.</p>
+ *
+ * <p>The tree is built once, out of a {@link Collection} of points, in O(n log n) time: every node splits its subtree
+ * at the median of its level's dimension, sized so that the tree is complete (every level full, except maybe the last
+ * one, which fills up from the left), hence of height floor(log<sub>2</sub>(n)). It answers the same queries as
+ * {@link KDTree}, through {@link SpatialQuerySolver}, so that query code can switch between the two. Since it never
+ * changes, any number of threads may query it at once.</p>
+ *
+ * @see KDTree
+ * @see SpatialQuerySolver
+ */
+public class StaticKDTree implements SpatialQuerySolver {
+
+	/* Subtrees with fewer points than this are not worth building in parallel. */
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+	private final int dims;
+	private final int count;
+	private final int[] coords; /* coords[i*dims + d] is coordinate d of the point of node i */
+	private final KDPoint[] points; /* points[i] is the point of node i, only read to hand it out */
+	private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+	/* The explicit stack of a k-nearest-neighbor search, reused by all the searches of a thread. */
+	private class Scratch {
+		/* Subtrees still to visit, with a lower bound on the distance from the anchor to any of their points. */
+		private final int[] nodes = new int[2 * height() + 2];
+		private final double[] bounds = new double[nodes.length];
+	}
+
+	/**
+	 * Builds a tree out of the provided points.
+	 * @param k The dimensionality of the points.
+	 * @param points The {@link KDPoint}s to store, all of dimensionality k. The collection itself is left unchanged,
+	 *               and the tree returns these very {@link KDPoint}s, which should therefore not be modified.
+	 * @throws RuntimeException if k is not positive, or if a point does not have k dimensions.
+	 */
+	public StaticKDTree(int k, Collection<KDPoint> points){
+		if(k <= 0)
+			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		dims = k;
+		KDPoint[] input = points.toArray(new KDPoint[0]);
+		for(KDPoint p : input)
+			if(p.coords.length != k)
+				throw new RuntimeException("Cannot store a point of " + p.coords.length + " dimensions in a tree of " + k + ".");
+		count = input.length;
+		coords = new int[count * dims];
+		this.points = new KDPoint[count];
+		Builder builder = new Builder(input, 0, count, 0, 0);
+		if(count >= PARALLEL_THRESHOLD)
+			ForkJoinPool.commonPool().invoke(builder);
+		else
+			builder.compute();
+	}
+
+	/* Lays out input[from, to) as the subtree of node, which splits on dim. */
+	private class Builder extends RecursiveAction {
+		private final KDPoint[] input;
+		private final int from, to, node, dim;
+
+		private Builder(KDPoint[] input, int from, int to, int node, int dim){
+			this.input = input;
+			this.from = from;
+			this.to = to;
+			this.node = node;
+			this.dim = dim;
+		}
+
+		@Override
+		protected void compute(){
+			if(from == to)
+				return;
+			int median = from + leftSize(to - from);
+			select(input, from, to, median, dim);
+			points[node] = input[median];
+			System.arraycopy(input[median].coords, 0, coords, node * dims, dims);
+			int nextDim = (dim + 1) % dims;
+			Builder left = new Builder(input, from, median, 2 * node + 1, nextDim);
+			Builder right = new Builder(input, median + 1, to, 2 * node + 2, nextDim);
+			if(to - from >= PARALLEL_THRESHOLD)
+				invokeAll(left, right);
+			else {
+				left.compute();
+				right.compute();
+			}
+		}
+	}
+
+	/* The size of the left subtree of a complete binary tree of n nodes. */
+	private static int leftSize(int n){
+		if(n <= 1)
+			return 0;
+		int lastLevel = Integer.highestOneBit(n); // Capacity of the last level, which holds n - (lastLevel - 1) nodes.
+		int half = lastLevel / 2;
+		return (half - 1) + Math.min(n - (lastLevel - 1), half);
+	}
+
+	/* Quickselect: afterwards, input[k] holds the k-th smallest coordinate on dim, with no larger one before it and
+	 * no smaller one after it. Expected O(to - from) time. */
+	private static void select(KDPoint[] input, int from, int to, int k, int dim){
+		int lo = from, hi = to;
+		while(hi - lo > 1){
+			int a = input[lo].coords[dim], b = input[(lo + hi) >>> 1].coords[dim], c = input[hi - 1].coords[dim];
+			int pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c)); // Median of three.
+			int lt = lo, i = lo, gt = hi;
+			while(i < gt){
+				int value = input[i].coords[dim];
+				if(value < pivot)
+					swap(input, lt++, i++);
+				else if(value > pivot)
+					swap(input, i, --gt);
+				else
+					i++;
+			}
+			if(k < lt)
+				hi = lt;
+			else if(k >= gt)
+				lo = gt;
+			else
+				return;
+		}
+	}
+
+	private static void swap(KDPoint[] input, int i, int j){
+		KDPoint temp = input[i];
+		input[i] = input[j];
+		input[j] = temp;
+	}
+
+	/* Exactly what KDPoint#euclideanDistance computes, straight out of the coordinate array. */
+	private double distance(int node, KDPoint anchor){
+		double sum = 0.0;
+		int base = node * dims;
+		for(int d = 0; d < dims; d++){
+			double diff = coords[base + d] - anchor.coords[d];
+			sum += diff * diff;
+		}
+		return Math.sqrt(sum);
+	}
+
+	@Override
+	public Collection<KDPoint> range(KDPoint p, double range){
+		ArrayList<KDPoint> pts = new ArrayList<>();
+		if(count > 0)
+			range(0, 0, p, range, pts);
+		return pts;
+	}
+
+	private void range(int node, int dim, KDPoint anchor, double range, Collection<KDPoint> results){
+		double dist = distance(node, anchor);
+		if(dist <= range && dist != 0)
+			results.add(points[node]);
+		/* The left subtree lies on or below the splitting plane, the right one on or above it. */
+		double planeDist = anchor.coords[dim] - coords[node * dims + dim];
+		int left = 2 * node + 1, nextDim = (dim + 1) % dims;
+		if(left < count && planeDist <= range)
+			range(left, nextDim, anchor, range, results);
+		if(left + 1 < count && -planeDist <= range)
+			range(left + 1, nextDim, anchor, range, results);
+	}
+
+	@Override
+	public KDPoint nearestNeighbor(KDPoint p){
+		return kNearestNeighbors(1, p).first();
+	}
+
+	@Override
+	public BoundedPriorityQueue<KDPoint> kNearestNeighbors(int k, KDPoint p){
+		if(k <= 0)
+			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		BoundedPriorityQueue<KDPoint> queue = new BoundedPriorityQueue<>(k);
+		if(count > 0)
+			kNearestNeighbors(k, p, queue, scratch.get());
+		return queue; // Might be empty; that's not a problem.
+	}
+
+	/**
+	 * <p>Runs a batch of k-nearest-neighbor queries on all cores. Each thread reuses the same search stack across all
+	 * of its queries. Since the tree never changes, the batch needs no locking.</p>
+	 * @param k A positive integer denoting the amount of neighbors to return per query.
+	 * @param queries The query points, which are left unchanged.
+	 * @param mortonOrder Whether to run the queries along a Morton (Z-order) curve, so that consecutive queries share
+	 *                    most of their nodes, rather than in the given order. It pays off for large batches of
+	 *                    scattered queries.
+	 * @return The k-nearest neighbors of every query point, in the order of queries, each as
+	 * {@link #kNearestNeighbors(int, KDPoint)} would return them.
+	 * @throws RuntimeException If k&lt;=0.
+	 */
+	public List<BoundedPriorityQueue<KDPoint>> kNearestNeighbors(int k, KDPoint[] queries, boolean mortonOrder){
+		if(k <= 0)
+			throw new RuntimeException("The value of k provided, " + k + ", is invalid: Please provide a positive integer.");
+		return KNNBatch.run(queries, mortonOrder, p -> kNearestNeighbors(k, p));
+	}
+
+	/* Depth-first, near side first, with an explicit stack instead of recursion. */
+	private void kNearestNeighbors(int k, KDPoint anchor, BoundedPriorityQueue<KDPoint> queue, Scratch stack){
+		int[] nodes = stack.nodes;
+		double[] bounds = stack.bounds;
+		int top = 0;
+		nodes[top] = 0;
+		bounds[top++] = 0;
+		while(top > 0){
+			int node = nodes[--top];
+			if(queue.size() == k && bounds[top] > queue.lastPriority())
+				continue; // The whole subtree lies farther than the k-th best.
+			double dist = distance(node, anchor);
+			if(dist != 0) // Leaves the anchor out, like KDTree does.
+				queue.enqueue(points[node], dist);
+			int dim = (31 - Integer.numberOfLeadingZeros(node + 1)) % dims; // Dimensions cycle with the depth.
+			double planeDist = anchor.coords[dim] - coords[node * dims + dim];
+			int left = 2 * node + 1;
+			int near = (planeDist >= 0) ? left + 1 : left, far = (planeDist >= 0) ? left : left + 1;
+			/* The far side goes below the near side, so that it is popped after the near side is done. */
+			if(far < count){
+				nodes[top] = far;
+				bounds[top++] = Math.abs(planeDist);
+			}
+			if(near < count){
+				nodes[top] = near;
+				bounds[top++] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of points in the tree.
+	 * @return The number of points in the tree.
+	 */
+	public int count(){
+		return count;
+	}
+
+	/**
+	 * Returns the height of the tree, which is floor(log<sub>2</sub>(n)) since the tree is complete.
+	 * @return The height of the tree, or -1 if it is empty.
+	 */
+	public int height(){
+		return 31 - Integer.numberOfLeadingZeros(count);
+	}
+
+	/**
+	 * Query the tree for emptiness.
+	 * @return {@code true} if the tree holds no points, {@code false} otherwise.
+	 */
+	public boolean isEmpty(){
+		return count == 0;
+	}
+}